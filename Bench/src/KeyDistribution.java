@@ -0,0 +1,139 @@
+import java.util.Random;
+
+/**
+ * 压测时 key 的分布, 产生 [0, keyCount) 之间的 key 编号, 再由 key(id) 转成真正的 key 对象
+ */
+public abstract class KeyDistribution {
+
+    protected final int keyCount;
+
+    protected KeyDistribution(int keyCount) {
+        if (keyCount <= 0) {
+            throw new IllegalArgumentException("keyCount 必须大于 0!");
+        }
+        this.keyCount = keyCount;
+    }
+
+    public abstract long nextId(Random random);
+
+    public Object key(long id) {
+        return id;
+    }
+
+    /**
+     * @param name uniform / zipf / collision
+     */
+    public static KeyDistribution of(String name, int keyCount, double zipfTheta, int collisionBuckets) {
+        switch (name) {
+            case "uniform":
+                return new Uniform(keyCount);
+            case "zipf":
+                return new Zipfian(keyCount, zipfTheta);
+            case "collision":
+                return new Collision(keyCount, collisionBuckets);
+            default:
+                throw new IllegalArgumentException("未知的分布: " + name);
+        }
+    }
+
+    public static class Uniform extends KeyDistribution {
+
+        public Uniform(int keyCount) {
+            super(keyCount);
+        }
+
+        @Override
+        public long nextId(Random random) {
+            return random.nextInt(keyCount);
+        }
+    }
+
+    /**
+     * Zipf 分布 (Gray 等人的算法, 和 YCSB 相同), 编号越小越热, theta 越大越集中
+     */
+    public static class Zipfian extends KeyDistribution {
+
+        private final double theta;
+        private final double alpha;
+        private final double zetaN;
+        private final double eta;
+
+        public Zipfian(int keyCount, double theta) {
+            super(keyCount);
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("theta 必须在 (0, 1) 之间!");
+            }
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.zetaN = zeta(keyCount, theta);
+            double zeta2 = zeta(2, theta);
+            this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta2 / zetaN);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        @Override
+        public long nextId(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) return 0;
+            if (uz < 1 + Math.pow(0.5, theta)) return 1;
+            long id = (long) (keyCount * Math.pow(eta * u - eta + 1, alpha));
+            return Math.min(id, keyCount - 1);
+        }
+    }
+
+    /**
+     * 哈希冲突攻击: 所有 key 只有 buckets 种 hashCode, 而且不可比较,
+     * 红黑树只能按内存地址排序, 查找时退化成遍历整棵树
+     */
+    public static class Collision extends KeyDistribution {
+
+        private final int buckets;
+
+        public Collision(int keyCount, int buckets) {
+            super(keyCount);
+            if (buckets <= 0) {
+                throw new IllegalArgumentException("buckets 必须大于 0!");
+            }
+            this.buckets = buckets;
+        }
+
+        @Override
+        public long nextId(Random random) {
+            return random.nextInt(keyCount);
+        }
+
+        @Override
+        public Object key(long id) {
+            return new CollidingKey(id, buckets);
+        }
+    }
+
+    public static class CollidingKey {
+        final long id;
+        private final int buckets;
+
+        CollidingKey(long id, int buckets) {
+            this.id = id;
+            this.buckets = buckets;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (id % buckets);
+        }
+    }
+
+}
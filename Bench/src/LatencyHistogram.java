@@ -0,0 +1,71 @@
+/**
+ * 延迟直方图, 和 HdrHistogram 一样按 2 的幂次方分段, 每段再平均分成 64 个桶
+ * 相对误差不超过 1 / 64, 记录一次只做几次位运算, 不分配内存
+ */
+public class LatencyHistogram {
+
+    // 小于 128 的值精确记录, 精度约 2 位有效数字
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    // 第 0 段覆盖 [0, 128), 之后每段覆盖 [2^n, 2^(n+1)), 分成 64 个桶
+    private final long[] counts = new long[SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF];
+    private long totalCount;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[index(value)]++;
+        totalCount++;
+        if (value > max) max = value;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile 百分位, 例如 99.9
+     * @return 对应桶的上界
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long target = (long) Math.ceil(percentile / 100 * totalCount);
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        // 最高位所在的位置决定段, 包括最高位在内的 SUB_BUCKET_BITS 位决定段内的桶
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int sub = (int) (value >>> shift) - HALF;
+        return SUB_BUCKETS + (shift - 1) * HALF + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+}
@@ -0,0 +1,465 @@
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TYMap 的压测工具, 模拟线上的读写比例和 key 分布, 统计延迟的长尾
+ *
+ * 用法: java LoadHarness --map=hash --dist=zipf --threads=4 --rate=200000 --ops=2000000
+ *
+ *   --map        hash / linked / bloom / tiered / partitioned
+ *   --dist       uniform / zipf / collision
+ *   --keys       key 的数量                     --preload   压测前先放入的 key 数量, 默认 keys / 2
+ *   --read / --write / --remove   读 / 写 / 删的比例, 默认 90 / 8 / 2
+ *   --threads    线程数, 大于 1 时非线程安全的 map 用 TYSynchronizedMap 包装
+ *   --rate       每秒总请求数 (开环, 按计划时间计算延迟); 0 表示闭环, 一个请求完成后立即发下一个
+ *   --ops        总请求数                       --seed      随机数种子
+ *   --theta      zipf 的参数                    --buckets   collision 分布的 hashCode 种类数
+ *   --trace      回放记录的请求文件, 每行 "G|P|R key编号", 忽略 dist / ops / 比例参数
+ *   --record     把生成的请求写到文件中, 之后可以用 --trace 回放
+ *   --hot        tiered 内存中保留的数量         --nodes     partitioned 的节点数
+ */
+public class LoadHarness {
+
+    private static final byte GET = 0;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final String[] OP_NAMES = {"get", "put", "remove"};
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.parse(args);
+        new LoadHarness().run(config);
+    }
+
+    private void run(Config config) throws Exception {
+        KeyDistribution distribution = KeyDistribution.of(config.dist, config.keys, config.theta, config.buckets);
+
+        Plan[] plans = config.trace != null
+                ? Plan.load(new File(config.trace), config.threads)
+                : Plan.generate(config, distribution);
+        if (config.record != null) {
+            Plan.save(plans, new File(config.record));
+        }
+
+        // key 对象提前创建好, 压测过程中不分配内存; value 直接用 key
+        int keyCount = config.keys;
+        for (Plan plan : plans) {
+            for (int i = 0; i < plan.size; i++) {
+                keyCount = (int) Math.max(keyCount, plan.ids[i] + 1);
+            }
+        }
+        Object[] keys = new Object[keyCount];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = distribution.key(i);
+        }
+
+        long heapBefore = usedHeapAfterGc();
+        TYMap<Object, Object> map = createMap(config, keys.length);
+        int preload = Math.min(config.preload < 0 ? keys.length / 2 : config.preload, keys.length);
+        for (int i = 0; i < preload; i++) {
+            map.put(keys[i], keys[i]);
+        }
+        long heapPreloaded = usedHeapAfterGc();
+
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+
+        LatencyHistogram[][] histograms = new LatencyHistogram[plans.length][3];
+        Worker[] workers = new Worker[plans.length];
+        CountDownLatch ready = new CountDownLatch(plans.length);
+        CountDownLatch go = new CountDownLatch(1);
+        long interval = config.rate > 0 ? (long) (1e9 * plans.length / config.rate) : 0;
+        for (int t = 0; t < plans.length; t++) {
+            for (int op = 0; op < 3; op++) {
+                histograms[t][op] = new LatencyHistogram();
+            }
+            workers[t] = new Worker(map, keys, plans[t], histograms[t], interval, ready, go);
+            workers[t].start();
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            // 任何一个 worker 出错, 结果都不完整, 不输出报告
+            IllegalStateException failure = null;
+            for (Worker worker : workers) {
+                if (worker.failure == null) continue;
+                if (failure == null) {
+                    failure = new IllegalStateException("压测线程执行失败, 已完成 " + worker.completed
+                            + " / " + worker.plan.size + " 次操作", worker.failure);
+                } else {
+                    failure.addSuppressed(worker.failure);
+                }
+            }
+            if (failure != null) throw failure;
+
+            long runGcCount = gcCount() - gcCount;
+            long runGcTime = gcTime() - gcTime;
+            long heapAfter = usedHeapAfterGc();
+
+            report(config, plans, histograms, elapsed, runGcCount, runGcTime, heapBefore, heapPreloaded, heapAfter, map.size());
+        } finally {
+            if (map instanceof TYPartitionedMap) {
+                ((TYPartitionedMap<Object, Object>) map).shutdown();
+            }
+            if (map instanceof TYTieredMap) {
+                ((TYTieredMap<Object, Object>) map).close();
+            }
+        }
+    }
+
+    private TYMap<Object, Object> createMap(Config config, int keyCount) throws Exception {
+        TYMap<Object, Object> map;
+        switch (config.map) {
+            case "hash":
+                map = new TYHashMap<>();
+                break;
+            case "linked":
+                map = new TYLinkedHashMap<>();
+                break;
+            case "bloom":
+                map = new TYBloomFilterMap<>(new TYHashMap<Object, Object>(), keyCount, 0.01);
+                break;
+            case "tiered": {
+                File file = File.createTempFile("LoadHarness", ".log");
+                file.deleteOnExit();
+                TYMapCodec.Serializer<Object> serializer = new KeySerializer(config.buckets);
+                map = new TYTieredMap<>(config.hot, file, new TYMapCodec<>(serializer, serializer));
+                break;
+            }
+            case "partitioned": {
+                TYPartitionedMap<Object, Object> partitioned = new TYPartitionedMap<>();
+                for (int i = 0; i < config.nodes; i++) {
+                    partitioned.addNode("node-" + i).get();
+                }
+                // 本身就是线程安全的
+                return partitioned;
+            }
+            default:
+                throw new IllegalArgumentException("未知的 map: " + config.map);
+        }
+        return config.threads > 1 ? new TYSynchronizedMap<>(map) : map;
+    }
+
+    private static class Worker extends Thread {
+        private final TYMap<Object, Object> map;
+        private final Object[] keys;
+        private final Plan plan;
+        private final LatencyHistogram[] histograms;
+        private final long interval;
+        private final CountDownLatch ready;
+        private final CountDownLatch go;
+
+        // 执行过程中抛出的异常, join 之后由主线程检查
+        volatile Throwable failure;
+        volatile int completed;
+
+        Worker(TYMap<Object, Object> map, Object[] keys, Plan plan, LatencyHistogram[] histograms,
+               long interval, CountDownLatch ready, CountDownLatch go) {
+            super("LoadHarness-worker");
+            this.map = map;
+            this.keys = keys;
+            this.plan = plan;
+            this.histograms = histograms;
+            this.interval = interval;
+            this.ready = ready;
+            this.go = go;
+        }
+
+        @Override
+        public void run() {
+            ready.countDown();
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                execute();
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        private void execute() {
+            long start = System.nanoTime();
+            for (int i = 0; i < plan.size; i++) {
+                long begin;
+                if (interval > 0) {
+                    // 开环: 从计划时间开始计算延迟, 前面的请求慢了, 后面请求的排队时间也算进去
+                    begin = start + i * interval;
+                    long wait;
+                    while ((wait = begin - System.nanoTime()) > 0) {
+                        if (wait > 50_000) LockSupport.parkNanos(wait - 20_000);
+                    }
+                } else {
+                    begin = System.nanoTime();
+                }
+
+                Object key = keys[(int) plan.ids[i]];
+                byte op = plan.ops[i];
+                if (op == GET) {
+                    map.get(key);
+                } else if (op == PUT) {
+                    map.put(key, key);
+                } else {
+                    map.remove(key);
+                }
+                histograms[op].record(System.nanoTime() - begin);
+                completed = i + 1;
+            }
+        }
+    }
+
+    private void report(Config config, Plan[] plans, LatencyHistogram[][] histograms, long elapsed,
+                        long gcCount, long gcTime, long heapBefore, long heapPreloaded, long heapAfter, int size) {
+        long ops = 0;
+        for (Plan plan : plans) {
+            ops += plan.size;
+        }
+        System.out.printf("map=%s dist=%s keys=%d threads=%d ops=%d %s%n",
+                config.map, config.trace != null ? "trace(" + config.trace + ")" : config.dist,
+                config.keys, plans.length, ops,
+                config.rate > 0 ? "open-loop rate=" + (long) config.rate + "/s" : "closed-loop");
+        System.out.printf("throughput: %.0f ops/s, elapsed %.3f s%n", ops * 1e9 / elapsed, elapsed / 1e9);
+
+        System.out.printf("%-8s %12s %10s %10s %10s %10s%n", "latency", "count", "p50(us)", "p99(us)", "p99.9(us)", "max(us)");
+        LatencyHistogram all = new LatencyHistogram();
+        for (int op = 0; op < 3; op++) {
+            LatencyHistogram merged = new LatencyHistogram();
+            for (LatencyHistogram[] perThread : histograms) {
+                merged.add(perThread[op]);
+            }
+            all.add(merged);
+            if (merged.getTotalCount() > 0) printLatency(OP_NAMES[op], merged);
+        }
+        printLatency("all", all);
+
+        System.out.printf("gc: %d collections, %d ms%n", gcCount, gcTime);
+        System.out.printf("footprint: %.1f MB after preload, %.1f MB after run, size=%d%n",
+                (heapPreloaded - heapBefore) / 1048576.0, (heapAfter - heapBefore) / 1048576.0, size);
+    }
+
+    private static void printLatency(String name, LatencyHistogram histogram) {
+        System.out.printf("%-8s %12d %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(gc.getCollectionTime(), 0);
+        }
+        return time;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * 一个线程要执行的请求序列
+     */
+    private static class Plan {
+        byte[] ops;
+        long[] ids;
+        int size;
+
+        Plan(int capacity) {
+            ops = new byte[capacity];
+            ids = new long[capacity];
+        }
+
+        void add(byte op, long id) {
+            if (size == ops.length) {
+                int capacity = Math.max(16, size << 1);
+                byte[] newOps = new byte[capacity];
+                long[] newIds = new long[capacity];
+                System.arraycopy(ops, 0, newOps, 0, size);
+                System.arraycopy(ids, 0, newIds, 0, size);
+                ops = newOps;
+                ids = newIds;
+            }
+            ops[size] = op;
+            ids[size] = id;
+            size++;
+        }
+
+        static Plan[] generate(Config config, KeyDistribution distribution) {
+            Plan[] plans = new Plan[config.threads];
+            int total = config.read + config.write + config.remove;
+            if (total <= 0) {
+                throw new IllegalArgumentException("读写比例之和必须大于 0!");
+            }
+            for (int t = 0; t < plans.length; t++) {
+                Random random = new Random(config.seed + t);
+                int count = (int) (config.ops / plans.length + (t < config.ops % plans.length ? 1 : 0));
+                plans[t] = new Plan(count);
+                for (int i = 0; i < count; i++) {
+                    int r = random.nextInt(total);
+                    byte op = r < config.read ? GET : r < config.read + config.write ? PUT : REMOVE;
+                    plans[t].add(op, distribution.nextId(random));
+                }
+            }
+            return plans;
+        }
+
+        // 文件中的请求按顺序轮流分给每个线程
+        static Plan[] load(File file, int threads) throws IOException {
+            Plan[] plans = new Plan[threads];
+            for (int t = 0; t < threads; t++) {
+                plans[t] = new Plan(16);
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                int n = 0;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    String[] parts = line.split("\\s+");
+                    byte op;
+                    switch (parts[0]) {
+                        case "G": op = GET; break;
+                        case "P": op = PUT; break;
+                        case "R": op = REMOVE; break;
+                        default: throw new IOException("无法识别的请求: " + line);
+                    }
+                    plans[n++ % threads].add(op, Long.parseLong(parts[1]));
+                }
+            }
+            return plans;
+        }
+
+        static void save(Plan[] plans, File file) throws IOException {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+                int max = 0;
+                for (Plan plan : plans) {
+                    max = Math.max(max, plan.size);
+                }
+                // 和 load 的分配方式对应, 按线程轮流写出
+                for (int i = 0; i < max; i++) {
+                    for (Plan plan : plans) {
+                        if (i >= plan.size) continue;
+                        writer.print("GPR".charAt(plan.ops[i]));
+                        writer.print(' ');
+                        writer.println(plan.ids[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    // tiered 需要把 key 写到磁盘上, key 只会是 Long 或者 CollidingKey
+    private static class KeySerializer implements TYMapCodec.Serializer<Object> {
+        private final int buckets;
+
+        KeySerializer(int buckets) {
+            this.buckets = buckets;
+        }
+
+        @Override
+        public void write(Object value, DataOutput out) throws IOException {
+            if (value instanceof KeyDistribution.CollidingKey) {
+                out.writeBoolean(true);
+                out.writeLong(((KeyDistribution.CollidingKey) value).id);
+            } else {
+                out.writeBoolean(false);
+                out.writeLong((Long) value);
+            }
+        }
+
+        @Override
+        public Object read(DataInput in) throws IOException {
+            boolean colliding = in.readBoolean();
+            long id = in.readLong();
+            return colliding ? new KeyDistribution.CollidingKey(id, buckets) : id;
+        }
+    }
+
+    private static class Config {
+        String map = "hash";
+        String dist = "uniform";
+        int keys = 100_000;
+        int preload = -1;
+        int read = 90;
+        int write = 8;
+        int remove = 2;
+        int threads = 1;
+        double rate;
+        long ops = 1_000_000;
+        long seed = 42;
+        double theta = 0.99;
+        int buckets = 16;
+        String trace;
+        String record;
+        int hot = 10_000;
+        int nodes = 4;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                    throw new IllegalArgumentException("参数格式应该是 --name=value: " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "map": config.map = value; break;
+                    case "dist": config.dist = value; break;
+                    case "keys": config.keys = Integer.parseInt(value); break;
+                    case "preload": config.preload = Integer.parseInt(value); break;
+                    case "read": config.read = Integer.parseInt(value); break;
+                    case "write": config.write = Integer.parseInt(value); break;
+                    case "remove": config.remove = Integer.parseInt(value); break;
+                    case "threads": config.threads = Integer.parseInt(value); break;
+                    case "rate": config.rate = Double.parseDouble(value); break;
+                    case "ops": config.ops = Long.parseLong(value); break;
+                    case "seed": config.seed = Long.parseLong(value); break;
+                    case "theta": config.theta = Double.parseDouble(value); break;
+                    case "buckets": config.buckets = Integer.parseInt(value); break;
+                    case "trace": config.trace = value; break;
+                    case "record": config.record = value; break;
+                    case "hot": config.hot = Integer.parseInt(value); break;
+                    case "nodes": config.nodes = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("未知的参数: " + name);
+                }
+            }
+            if (config.threads <= 0) {
+                throw new IllegalArgumentException("threads 必须大于 0!");
+            }
+            return config;
+        }
+    }
+
+}
@@ -8,7 +8,7 @@ public class Main {
 //        Person p1 = new Person(10, 1.77f, "ty");
 //        Person p2 = new Person(10, 1.77f, "ty");
 
-//        Map<Object, Integer> map = new TYHashMap<>();
+//        Map<Object, Integer> map = new TYMapAdapter<>(new TYHashMap<>());
 //        map.put(p1, 1);
 //        map.put(p2, 2);
 //        map.put("ty", 3);
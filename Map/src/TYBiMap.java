@@ -0,0 +1,130 @@
+import java.util.Objects;
+
+/**
+ * 双向映射, value 也不允许重复
+ *
+ * 内部用两个 TYHashMap 分别保存 key -> value 和 value -> key,
+ * containsValue / getKey 直接查反向的 map, 不需要遍历所有节点
+ * inverse() 返回共用这两个 map 的反向视图, 修改任意一方另一方都能看到
+ */
+public class TYBiMap<K, V> implements TYMap<K, V> {
+
+    private final TYHashMap<K, V> forward;
+    private final TYHashMap<V, K> backward;
+    private TYBiMap<V, K> inverse;
+
+    public TYBiMap() {
+        this(new TYHashMap<K, V>(), new TYHashMap<V, K>());
+    }
+
+    private TYBiMap(TYHashMap<K, V> forward, TYHashMap<V, K> backward) {
+        this.forward = forward;
+        this.backward = backward;
+    }
+
+    /**
+     * 反向视图: key 和 value 互换
+     */
+    public TYBiMap<V, K> inverse() {
+        if (inverse == null) {
+            inverse = new TYBiMap<>(backward, forward);
+            inverse.inverse = this;
+        }
+        return inverse;
+    }
+
+    @Override
+    public int size() {
+        return forward.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return forward.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        forward.clear();
+        backward.clear();
+    }
+
+    /**
+     * @throws IllegalArgumentException value 已经对应了另一个 key
+     */
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * 和 put 一样, 但 value 已经对应了另一个 key 时, 先删除那个 key
+     */
+    public V forcePut(K key, V value) {
+        return put(key, value, true);
+    }
+
+    private V put(K key, V value, boolean force) {
+        boolean valueExists = backward.containsKey(value);
+        if (valueExists) {
+            K oldKey = backward.get(value);
+            if (forward.containsKey(key) && Objects.equals(oldKey, key)) return value;
+            if (!force) {
+                throw new IllegalArgumentException("value 已经存在: " + value);
+            }
+            forward.remove(oldKey);
+        }
+
+        boolean keyExists = forward.containsKey(key);
+        V oldValue = forward.put(key, value);
+        if (keyExists) {
+            backward.remove(oldValue);
+        }
+        backward.put(value, key);
+        return oldValue;
+    }
+
+    @Override
+    public V get(K key) {
+        return forward.get(key);
+    }
+
+    /**
+     * 根据 value 找 key
+     */
+    public K getKey(V value) {
+        return backward.get(value);
+    }
+
+    @Override
+    public V remove(K key) {
+        if (!forward.containsKey(key)) return null;
+        V oldValue = forward.remove(key);
+        backward.remove(oldValue);
+        return oldValue;
+    }
+
+    /**
+     * 根据 value 删除
+     * @return 被删除的 key
+     */
+    public K removeValue(V value) {
+        return inverse().remove(value);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return forward.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return backward.containsKey(value);
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        forward.traversal(visitor);
+    }
+
+}
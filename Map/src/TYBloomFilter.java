@@ -0,0 +1,124 @@
+/**
+ * 分块的计数布隆过滤器
+ *
+ * 过滤器被分成若干个 64 字节的块 (一个 cache line 的大小), 每个块有 128 个 4 位计数器.
+ * 一个元素的所有探测位置都落在同一个块中, 判断一次只访问一段连续的 64 字节.
+ * Java 无法控制数组的内存对齐 (数据从数组头之后开始, GC 还会移动对象), 所以一个块通常跨两个
+ * 相邻的 cache line, 最多两次缓存未命中, 而普通布隆过滤器每个探测位置都可能是一次未命中
+ * 计数器支持删除, 计数器加到 15 后不再变化 (也不再减少), 避免溢出后误删
+ */
+public class TYBloomFilter {
+
+    // 一个块 8 个 long = 64 字节 (不保证按 cache line 对齐), 每个 long 放 16 个 4 位计数器
+    private static final int LONGS_PER_BLOCK = 8;
+    private static final int COUNTERS_PER_BLOCK = LONGS_PER_BLOCK * 16;
+    private static final long MAX_COUNT = 0xF;
+
+    private final long[] counters;
+    private final int blockMask;
+    private final int hashCount;
+    private final int expectedInsertions;
+
+    /**
+     * @param expectedInsertions 预计元素数量
+     * @param falsePositiveRate 期望的误判率, 例如 0.01
+     */
+    public TYBloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions 必须大于 0!");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate 必须在 (0, 1) 之间!");
+        }
+        this.expectedInsertions = expectedInsertions;
+
+        // 最优位数 m = -n * ln(p) / (ln2)^2, 最优哈希次数 k = m / n * ln2
+        double bits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int blocks = 1;
+        while ((long) blocks * COUNTERS_PER_BLOCK < bits && blocks < (1 << 24)) {
+            blocks <<= 1;
+        }
+        this.blockMask = blocks - 1;
+        this.counters = new long[blocks * LONGS_PER_BLOCK];
+
+        int k = (int) Math.round(bits / expectedInsertions * Math.log(2));
+        this.hashCount = Math.max(1, Math.min(k, 16));
+    }
+
+    public int getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public void add(int hashCode) {
+        long h = mix(hashCode);
+        int base = block(h);
+        int pos = (int) h;
+        int step = step(h);
+        for (int i = 0; i < hashCount; i++, pos += step) {
+            int counter = pos & (COUNTERS_PER_BLOCK - 1);
+            int index = base + (counter >>> 4);
+            int shift = (counter & 15) << 2;
+            long count = (counters[index] >>> shift) & MAX_COUNT;
+            if (count < MAX_COUNT) {
+                counters[index] += 1L << shift;
+            }
+        }
+    }
+
+    public void remove(int hashCode) {
+        long h = mix(hashCode);
+        int base = block(h);
+        int pos = (int) h;
+        int step = step(h);
+        for (int i = 0; i < hashCount; i++, pos += step) {
+            int counter = pos & (COUNTERS_PER_BLOCK - 1);
+            int index = base + (counter >>> 4);
+            int shift = (counter & 15) << 2;
+            long count = (counters[index] >>> shift) & MAX_COUNT;
+            // 计数器为 0 说明没有添加过, 为 15 说明已经饱和, 都不能减
+            if (count != 0 && count < MAX_COUNT) {
+                counters[index] -= 1L << shift;
+            }
+        }
+    }
+
+    /**
+     * @return false 表示一定不存在, true 表示可能存在
+     */
+    public boolean mightContain(int hashCode) {
+        long h = mix(hashCode);
+        int base = block(h);
+        int pos = (int) h;
+        int step = step(h);
+        for (int i = 0; i < hashCount; i++, pos += step) {
+            int counter = pos & (COUNTERS_PER_BLOCK - 1);
+            int shift = (counter & 15) << 2;
+            if (((counters[base + (counter >>> 4)] >>> shift) & MAX_COUNT) == 0) return false;
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = 0;
+        }
+    }
+
+    // 把 32 位的 hashCode 扩展成 64 位, 高位选块, 低位决定块内的探测位置
+    private static long mix(int hashCode) {
+        long h = hashCode * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+
+    private int block(long h) {
+        return ((int) (h >>> 40) & blockMask) * LONGS_PER_BLOCK;
+    }
+
+    // 步长必须是奇数, 才能在 128 个计数器中不重复地探测
+    private static int step(long h) {
+        return (int) (h >>> 20) | 1;
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * 在任意 TYMap 前面加一个布隆过滤器, 查询一定不存在的 key 时不再访问被包装的 map
+ * 适合大部分 get / containsKey 都查不到的场景, 或者被包装的 map 查询代价很高 (比如在磁盘上)
+ *
+ * 过滤器在 put / remove / clear 时同步更新; 放入过滤器的 key 超过预计数量的 2 倍时,
+ * 按当前元素数量重建, 同时清掉已经不在 map 中的 key
+ *
+ * 被包装的 map 自己删除 key 时 (比如 TYLinkedHashMap 的 removeEldestEntry), 过滤器必须知道:
+ * TYLinkedHashMap 通过 addEvictionListener 同步删除 (不影响它已有的其他监听器);
+ * 其他会自己删除 key 的 map (比如 TYReferenceMap 的弱引用 key) 不支持, 构造时直接拒绝
+ */
+public class TYBloomFilterMap<K, V> implements TYMap<K, V> {
+
+    private static final int DEFAULT_EXPECTED_SIZE = 1 << 10;
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final TYMap<K, V> map;
+    // 被包装的 map 会在 put 时淘汰别的 key (TYLinkedHashMap), 不能用 size 判断是否是新 key
+    private final boolean evicting;
+    private final double falsePositiveRate;
+    private TYBloomFilter filter;
+    // 上次重建之后放入过滤器的 key 数量, 包括之后被删除的
+    private int insertions;
+
+    // 统计: 查询次数, 被过滤器直接拦下的次数, 过滤器误判的次数
+    private long lookups;
+    private long filtered;
+    private long falsePositives;
+
+    public TYBloomFilterMap(TYMap<K, V> map) {
+        this(map, DEFAULT_EXPECTED_SIZE, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * @param map 被包装的 map, 之后不要再直接修改它, 否则过滤器会不同步
+     * @param expectedSize 预计元素数量
+     * @param falsePositiveRate 期望的误判率
+     */
+    public TYBloomFilterMap(TYMap<K, V> map, int expectedSize, double falsePositiveRate) {
+        if (map == null) {
+            throw new IllegalArgumentException("map 不能为空!");
+        }
+        if (map instanceof TYReferenceMap) {
+            throw new IllegalArgumentException("不支持会自动删除 key 的 TYReferenceMap!");
+        }
+        this.map = map;
+        this.falsePositiveRate = falsePositiveRate;
+        this.evicting = map instanceof TYLinkedHashMap;
+        if (evicting) {
+            ((TYLinkedHashMap<K, V>) map).addEvictionListener(new Visitor<K, V>() {
+                @Override
+                boolean visit(K key, V value) {
+                    filter.remove(hash(key));
+                    return false;
+                }
+            });
+        }
+        this.filter = new TYBloomFilter(Math.max(expectedSize, map.size()), falsePositiveRate);
+        // 已有的元素也要放进过滤器
+        rebuild(filter.getExpectedInsertions());
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        filter.clear();
+        insertions = 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        // 会淘汰的 map 在 put 时可能同时加一个删一个, size 不变, 只能先查一次;
+        // 其他 map (比如磁盘, 远程) 查一次代价很高, 比较 put 前后的 size 即可
+        boolean added;
+        V oldValue;
+        if (evicting) {
+            added = !map.containsKey(key);
+            oldValue = map.put(key, value);
+        } else {
+            int oldSize = map.size();
+            oldValue = map.put(key, value);
+            added = map.size() > oldSize;
+        }
+        // 覆盖旧值时过滤器不需要变化
+        if (added) {
+            filter.add(hash(key));
+            insertions++;
+            int expected = filter.getExpectedInsertions();
+            if (insertions > expected << 1) {
+                rebuild(Math.max(expected, map.size() << 1));
+            }
+        }
+        return oldValue;
+    }
+
+    @Override
+    public V get(K key) {
+        lookups++;
+        if (!filter.mightContain(hash(key))) {
+            filtered++;
+            return null;
+        }
+        V value = map.get(key);
+        // value 为 null 的元素也会被当成误判, 统计值偏大
+        if (value == null) {
+            falsePositives++;
+        }
+        return value;
+    }
+
+    @Override
+    public V remove(K key) {
+        if (!filter.mightContain(hash(key))) return null;
+
+        // remove 不会触发淘汰, 比较 size 就能知道是否真的删除了
+        int oldSize = map.size();
+        V oldValue = map.remove(key);
+        if (map.size() < oldSize) {
+            filter.remove(hash(key));
+        }
+        return oldValue;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        lookups++;
+        if (!filter.mightContain(hash(key))) {
+            filtered++;
+            return false;
+        }
+        if (map.containsKey(key)) return true;
+        falsePositives++;
+        return false;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return map.containsValue(value);
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        map.traversal(visitor);
+    }
+
+    /**
+     * 实际测得的误判率: 过滤器判断可能存在, 但 map 中没有的比例
+     */
+    public double getMeasuredFalsePositiveRate() {
+        long misses = filtered + falsePositives;
+        return misses == 0 ? 0 : (double) falsePositives / misses;
+    }
+
+    /**
+     * 被过滤器直接拦下的查询占所有查询的比例
+     */
+    public double getFilteredRate() {
+        return lookups == 0 ? 0 : (double) filtered / lookups;
+    }
+
+    public void resetStatistics() {
+        lookups = 0;
+        filtered = 0;
+        falsePositives = 0;
+    }
+
+    // 按新容量重新创建过滤器, 把 map 中所有 key 重新放进去
+    private void rebuild(int expectedSize) {
+        final TYBloomFilter newFilter = new TYBloomFilter(expectedSize, falsePositiveRate);
+        map.traversal(new Visitor<K, V>() {
+            @Override
+            boolean visit(K key, V value) {
+                newFilter.add(hash(key));
+                return false;
+            }
+        });
+        filter = newFilter;
+        insertions = map.size();
+    }
+
+    private static int hash(Object key) {
+        return key == null ? 0 : key.hashCode();
+    }
+
+}
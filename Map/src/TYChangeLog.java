@@ -0,0 +1,185 @@
+/**
+ * TYHashMap 的变更记录, 通过 TYHashMap.enableChangeCapture 开启
+ *
+ * put / remove / clear 每次修改都会按顺序写入一个固定大小的环形缓冲区, 每条记录有递增的序号.
+ * 订阅者 (Subscription) 各自记录读到的位置, 按批读取增量应用到副本上, 不需要比较整个 map.
+ * 订阅者落后超过缓冲区大小时, 旧记录已经被覆盖, 只能用 resync 重新复制一份快照后继续
+ *
+ * 写入和读取可以在不同线程, resync 需要遍历源 map, 必须在修改源 map 的线程中调用
+ * 缓冲区会引用最近 capacity 条记录的 key / value
+ */
+public class TYChangeLog<K, V> {
+
+    public static final byte PUT = 1;
+    public static final byte REMOVE = 2;
+    public static final byte CLEAR = 3;
+
+    /**
+     * 处理一条变更记录, REMOVE 的 value 为 null, CLEAR 的 key 和 value 都为 null
+     */
+    public interface Handler<K, V> {
+        void onChange(long sequence, byte op, K key, V value);
+    }
+
+    private final TYMap<K, V> source;
+    private final byte[] ops;
+    private final Object[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    // 下一条记录的序号, 也就是已经写入的记录总数
+    private long nextSequence;
+
+    TYChangeLog(TYMap<K, V> source, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity 必须大于 0!");
+        }
+        // 容量取 2 的幂次方, 用 & 代替 % 计算位置
+        int n = 1;
+        while (n < capacity && n < (1 << 30)) {
+            n <<= 1;
+        }
+        this.source = source;
+        this.ops = new byte[n];
+        this.keys = new Object[n];
+        this.values = new Object[n];
+        this.mask = n - 1;
+    }
+
+    synchronized void append(byte op, K key, V value) {
+        int index = (int) nextSequence & mask;
+        ops[index] = op;
+        keys[index] = key;
+        values[index] = value;
+        nextSequence++;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * 从当前位置开始订阅, 之前的变更需要调用方自己复制 (或者直接 resync)
+     */
+    public synchronized Subscription subscribe() {
+        return new Subscription(nextSequence);
+    }
+
+    public class Subscription {
+
+        // 下一条要读取的记录序号
+        private long cursor;
+
+        // 每批记录先复制出来, 在锁外回调, 不阻塞写入
+        private byte[] batchOps = new byte[0];
+        private Object[] batchKeys = new Object[0];
+        private Object[] batchValues = new Object[0];
+
+        private Subscription(long cursor) {
+            this.cursor = cursor;
+        }
+
+        public long getSequence() {
+            return cursor;
+        }
+
+        /**
+         * 是否已经落后太多, 未读取的记录被覆盖了
+         */
+        public boolean isLagging() {
+            synchronized (TYChangeLog.this) {
+                return nextSequence - cursor > getCapacity();
+            }
+        }
+
+        /**
+         * 读取最多 maxBatch 条记录, 交给 handler 处理
+         * @return 读取的记录数
+         * @throws IllegalStateException 已经落后太多, 需要先 resync
+         */
+        public int drain(int maxBatch, Handler<K, V> handler) {
+            int count = tryDrain(maxBatch, handler);
+            if (count < 0) {
+                throw new IllegalStateException("订阅者落后超过 " + getCapacity() + " 条记录, 需要 resync");
+            }
+            return count;
+        }
+
+        // 落后太多时返回 -1, 不读取任何记录
+        @SuppressWarnings("unchecked")
+        private int tryDrain(int maxBatch, Handler<K, V> handler) {
+            long first;
+            int count;
+            synchronized (TYChangeLog.this) {
+                if (nextSequence - cursor > getCapacity()) return -1;
+                count = (int) Math.min(maxBatch, nextSequence - cursor);
+                if (batchOps.length < count) {
+                    batchOps = new byte[count];
+                    batchKeys = new Object[count];
+                    batchValues = new Object[count];
+                }
+                first = cursor;
+                for (int i = 0; i < count; i++) {
+                    int index = (int) (first + i) & mask;
+                    batchOps[i] = ops[index];
+                    batchKeys[i] = keys[index];
+                    batchValues[i] = values[index];
+                }
+                cursor += count;
+            }
+
+            for (int i = 0; i < count; i++) {
+                handler.onChange(first + i, batchOps[i], (K) batchKeys[i], (V) batchValues[i]);
+                // 处理完就不再引用
+                batchKeys[i] = null;
+                batchValues[i] = null;
+            }
+            return count;
+        }
+
+        /**
+         * 把最多 maxBatch 条增量应用到 replica 上
+         * 落后太多时不会自动 resync (resync 要遍历源 map, 只能在修改源 map 的线程中进行),
+         * 而是返回 -1, 由调用方安排在写线程中 resync
+         * @return 应用的记录数, 需要 resync 时返回 -1
+         */
+        public int applyTo(final TYMap<K, V> replica, int maxBatch) {
+            return tryDrain(maxBatch, new Handler<K, V>() {
+                @Override
+                public void onChange(long sequence, byte op, K key, V value) {
+                    if (op == PUT) {
+                        replica.put(key, value);
+                    } else if (op == REMOVE) {
+                        replica.remove(key);
+                    } else {
+                        replica.clear();
+                    }
+                }
+            });
+        }
+
+        /**
+         * 清空 replica, 复制源 map 的快照, 然后从快照对应的位置继续订阅
+         * 必须在修改源 map 的线程中调用, 或者由调用方保证期间没有线程修改源 map:
+         * 这里的锁只保护缓冲区, append 在源 map 修改完成之后才调用, 挡不住正在进行的修改
+         */
+        public void resync(final TYMap<K, V> replica) {
+            synchronized (TYChangeLog.this) {
+                replica.clear();
+                source.traversal(new TYMap.Visitor<K, V>() {
+                    @Override
+                    boolean visit(K key, V value) {
+                        replica.put(key, value);
+                        return false;
+                    }
+                });
+                cursor = nextSequence;
+            }
+        }
+    }
+
+}
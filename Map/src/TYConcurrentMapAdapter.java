@@ -0,0 +1,281 @@
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 把 TYSynchronizedMap 适配成 java.util.concurrent.ConcurrentMap
+ *
+ * 注意: 和 ConcurrentMap 的约定不同, 迭代器不是弱一致的!
+ * ConcurrentHashMap 的迭代器可以不加锁和修改并发执行, 这里的视图直接遍历红黑树节点,
+ * 迭代器是快速失败的: 发现遍历期间 map 被修改时抛出 ConcurrentModificationException,
+ * 但不加锁时修改计数本身也没有同步, 不能保证一定检测到, 可能读到不一致的树.
+ * 通过 keySet / values / entrySet 迭代时必须自己持有锁 (和 Collections.synchronizedMap 相同):
+ * synchronized (syncMap) { for (Map.Entry<K, V> e : adapter.entrySet()) { ... } }
+ * 从 ConcurrentHashMap 迁移过来时, 要检查所有不加锁遍历的代码; forEach / replaceAll 已经在锁内执行
+ *
+ * 和 TYSynchronizedMap 使用同一把锁 (TYSynchronizedMap 对象本身), 两边可以混用;
+ * putIfAbsent / replace / compute 等复合操作在锁内整体执行. 不支持 null value, 传入时抛出 NullPointerException
+ */
+public class TYConcurrentMapAdapter<K, V> extends TYMapAdapter<K, V> implements ConcurrentMap<K, V> {
+
+    private final Object mutex;
+
+    public TYConcurrentMapAdapter(TYSynchronizedMap<K, V> map) {
+        super(unwrap(map));
+        this.mutex = map;
+    }
+
+    private static <K, V> TYHashMap<K, V> unwrap(TYSynchronizedMap<K, V> map) {
+        if (map == null) {
+            throw new IllegalArgumentException("map 不能为空!");
+        }
+        if (!(map.unwrap() instanceof TYHashMap)) {
+            throw new IllegalArgumentException("只支持包装 TYHashMap 的 TYSynchronizedMap!");
+        }
+        return (TYHashMap<K, V>) map.unwrap();
+    }
+
+    // 和 ConcurrentHashMap 一样, null value 抛出 NullPointerException
+    private static void valueNotNullCheck(Object value) {
+        Objects.requireNonNull(value, "value 不能为空!");
+    }
+
+    @Override
+    public int size() {
+        synchronized (mutex) {
+            return super.size();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        synchronized (mutex) {
+            return super.isEmpty();
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        synchronized (mutex) {
+            return super.get(key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        synchronized (mutex) {
+            return super.containsKey(key);
+        }
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        synchronized (mutex) {
+            return super.containsValue(value);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        valueNotNullCheck(value);
+        synchronized (mutex) {
+            return super.put(key, value);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        synchronized (mutex) {
+            return super.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mutex) {
+            super.clear();
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        valueNotNullCheck(value);
+        synchronized (mutex) {
+            V oldValue = map.get(key);
+            if (oldValue == null) {
+                map.put(key, value);
+            }
+            return oldValue;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object key, Object value) {
+        if (value == null) return false;
+        synchronized (mutex) {
+            if (!value.equals(map.get((K) key))) return false;
+            map.remove((K) key);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        valueNotNullCheck(oldValue);
+        valueNotNullCheck(newValue);
+        synchronized (mutex) {
+            if (!oldValue.equals(map.get(key))) return false;
+            map.put(key, newValue);
+            return true;
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        valueNotNullCheck(value);
+        synchronized (mutex) {
+            V oldValue = map.get(key);
+            if (oldValue != null) {
+                map.put(key, value);
+            }
+            return oldValue;
+        }
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        synchronized (mutex) {
+            V oldValue = map.get(key);
+            if (oldValue != null) return oldValue;
+            V newValue = mappingFunction.apply(key);
+            if (newValue != null) {
+                map.put(key, newValue);
+            }
+            return newValue;
+        }
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        synchronized (mutex) {
+            V oldValue = map.get(key);
+            if (oldValue == null) return null;
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (newValue == null) {
+                map.remove(key);
+            } else {
+                map.put(key, newValue);
+            }
+            return newValue;
+        }
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        synchronized (mutex) {
+            V oldValue = map.get(key);
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (newValue == null) {
+                if (oldValue != null) {
+                    map.remove(key);
+                }
+            } else {
+                map.put(key, newValue);
+            }
+            return newValue;
+        }
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        valueNotNullCheck(value);
+        synchronized (mutex) {
+            V oldValue = map.get(key);
+            V newValue = oldValue == null ? value : remappingFunction.apply(oldValue, value);
+            if (newValue == null) {
+                map.remove(key);
+            } else {
+                map.put(key, newValue);
+            }
+            return newValue;
+        }
+    }
+
+    @Override
+    V setEntryValue(TYHashMap.Node<K, V> node, V value) {
+        valueNotNullCheck(value);
+        synchronized (mutex) {
+            return super.setEntryValue(node, value);
+        }
+    }
+
+    // ConcurrentMap 的默认实现不加锁遍历 entrySet, 必须覆盖
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        synchronized (mutex) {
+            for (Entry<K, V> entry : super.entrySet()) {
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        synchronized (mutex) {
+            for (Entry<K, V> entry : super.entrySet()) {
+                V newValue = function.apply(entry.getKey(), entry.getValue());
+                valueNotNullCheck(newValue);
+                entry.setValue(newValue);
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        synchronized (mutex) {
+            return super.entrySet();
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        synchronized (mutex) {
+            return super.keySet();
+        }
+    }
+
+    @Override
+    public Collection<V> values() {
+        synchronized (mutex) {
+            return super.values();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        synchronized (mutex) {
+            return super.equals(o);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        synchronized (mutex) {
+            return super.hashCode();
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mutex) {
+            return super.toString();
+        }
+    }
+
+}
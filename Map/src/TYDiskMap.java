@@ -0,0 +1,276 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 存放在本地文件中的 TYMap
+ *
+ * 文件是只追加的日志, 每条记录: [长度][类型][key][value], 删除也是追加一条 REMOVE 记录
+ * 内存中只保留索引 key -> 记录在文件中的偏移量, value 每次都从文件中读取
+ * 打开已有文件时, 重放日志重建索引; 无效记录 (被覆盖或删除的) 太多时自动压缩文件
+ *
+ * 不是线程安全的, IO 异常包装成 UncheckedIOException 抛出
+ */
+public class TYDiskMap<K, V> implements TYMap<K, V>, Closeable {
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    // 无效记录超过这个数量, 并且超过有效记录数量时压缩
+    private static final int COMPACT_THRESHOLD = 1 << 12;
+
+    private final File file;
+    private final TYMapCodec<K, V> codec;
+    private RandomAccessFile raf;
+
+    // key -> 记录偏移量
+    private TYHashMap<K, Long> index = new TYHashMap<>();
+    private int garbage;
+
+    // 写记录时复用的缓冲区, 一条记录一次写入文件
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+
+    public TYDiskMap(File file, TYMapCodec<K, V> codec) throws IOException {
+        this.file = file;
+        this.codec = codec;
+        this.raf = new RandomAccessFile(file, "rw");
+        replay();
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+        garbage = 0;
+        try {
+            raf.setLength(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        try {
+            V oldValue = null;
+            Long oldOffset = index.get(key);
+            if (oldOffset != null) {
+                oldValue = readValue(oldOffset);
+                garbage++;
+            }
+            index.put(key, append(PUT, key, value));
+            compactIfNeeded();
+            return oldValue;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        Long offset = index.get(key);
+        if (offset == null) return null;
+        try {
+            return readValue(offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        Long offset = index.get(key);
+        if (offset == null) return null;
+        try {
+            V oldValue = readValue(offset);
+            append(REMOVE, key, null);
+            index.remove(key);
+            // 旧的 PUT 和这条 REMOVE 都是无效记录
+            garbage += 2;
+            compactIfNeeded();
+            return oldValue;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(final V value) {
+        final boolean[] found = new boolean[1];
+        traversal(new Visitor<K, V>() {
+            @Override
+            boolean visit(K key, V v) {
+                found[0] = value == null ? v == null : value.equals(v);
+                return found[0];
+            }
+        });
+        return found[0];
+    }
+
+    @Override
+    public void traversal(final Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        index.traversal(new Visitor<K, Long>() {
+            @Override
+            boolean visit(K key, Long offset) {
+                try {
+                    return visitor.visit(key, readValue(offset));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    private long append(byte type, K key, V value) throws IOException {
+        buffer.reset();
+        bufferOut.writeInt(0);  // 长度占位
+        bufferOut.writeByte(type);
+        codec.writeKey(key, bufferOut);
+        if (type == PUT) {
+            codec.writeValue(value, bufferOut);
+        }
+        byte[] bytes = buffer.toByteArray();
+        int length = bytes.length - 4;
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+
+        long offset = raf.length();
+        raf.seek(offset);
+        raf.write(bytes);
+        return offset;
+    }
+
+    private DataInputStream readRecord(long offset) throws IOException {
+        raf.seek(offset);
+        int length = raf.readInt();
+        // 长度本身也可能没写完或者损坏, 超出文件范围时当作不完整的记录
+        if (length < 0 || length > raf.length() - offset - 4) {
+            throw new EOFException("记录长度不正确: " + length + ", offset: " + offset);
+        }
+        byte[] bytes = new byte[length];
+        raf.readFully(bytes);
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private V readValue(long offset) throws IOException {
+        DataInputStream in = readRecord(offset);
+        in.readByte();
+        codec.readKey(in);
+        return codec.readValue(in);
+    }
+
+    // 从头读一遍日志, 重建索引
+    private void replay() throws IOException {
+        long offset = 0;
+        long length = raf.length();
+        while (offset < length) {
+            DataInputStream in;
+            try {
+                in = readRecord(offset);
+            } catch (EOFException e) {
+                // 最后一条记录没写完 (比如进程崩溃), 截断丢弃
+                raf.setLength(offset);
+                break;
+            }
+            byte type = in.readByte();
+            K key = codec.readKey(in);
+            if (type == PUT) {
+                if (index.put(key, offset) != null) garbage++;
+            } else {
+                if (index.remove(key) != null) garbage++;
+                garbage++;
+            }
+            offset = raf.getFilePointer();
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (garbage > COMPACT_THRESHOLD && garbage > index.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * 只保留有效记录, 写到新文件后替换旧文件
+     */
+    public void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".compact");
+        final RandomAccessFile old = raf;
+        final RandomAccessFile target = new RandomAccessFile(tmp, "rw");
+        target.setLength(0);
+        final TYHashMap<K, Long> newIndex = new TYHashMap<>(index.size());
+        final IOException[] error = new IOException[1];
+
+        index.traversal(new Visitor<K, Long>() {
+            @Override
+            boolean visit(K key, Long offset) {
+                try {
+                    // 记录原样复制过去
+                    old.seek(offset);
+                    byte[] bytes = new byte[4 + old.readInt()];
+                    old.seek(offset);
+                    old.readFully(bytes);
+                    newIndex.put(key, target.getFilePointer());
+                    target.write(bytes);
+                    return false;
+                } catch (IOException e) {
+                    error[0] = e;
+                    return true;
+                }
+            }
+        });
+        if (error[0] != null) {
+            target.close();
+            tmp.delete();
+            throw error[0];
+        }
+
+        // 先落盘再替换, 原子替换保证崩溃时磁盘上总有一个完整的文件 (旧的或新的)
+        target.getFD().sync();
+        target.close();
+        old.close();
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // 替换失败时继续使用旧文件
+            raf = new RandomAccessFile(file, "rw");
+        }
+
+        index = newIndex;
+        garbage = 0;
+    }
+
+}
@@ -1,7 +1,10 @@
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class TYHashMap<K, V> implements TYMap<K, V> {
 
@@ -16,6 +19,9 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
     private static final boolean BLACK = true;
     private int size;
 
+    // 结构修改 (增删节点, 清空, 重建数组) 的次数, TYMapAdapter 的迭代器用它检测遍历期间的修改
+    int modCount;
+
     // 哈希表数组, 这里用红黑树实现, 不用链表. 数组只存放红黑树根节点, 而不是存放整颗红黑树
     // 当哈希冲突时, 一个数组索引对应的就是一颗红黑树
     private Node<K,V>[] table;
@@ -26,12 +32,60 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
     // 装填因子. 超过 0.75 时, 哈希表桶数组扩容为原来的 2 倍
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
+    // 旧数组长度达到这个值时, 扩容自动使用 ForkJoin 并行迁移
+    private static final int PARALLEL_REHASH_THRESHOLD = 1 << 16;
+
+    // 并行迁移时每个任务至少处理的旧桶数量, 太小的话任务调度开销比迁移本身还大
+    private static final int MIN_REHASH_CHUNK = 1 << 12;
+
+    // 变更记录, 调用 enableChangeCapture 之后才有
+    private TYChangeLog<K,V> changeLog;
+
+    // 回收的节点, 通过 left 串成单链表; maxFreeNodes 为 0 表示不回收
+    private Node<K,V> freeNodes;
+    private int freeCount;
+    private int maxFreeNodes;
+
+    // 复用模式: bucketEpochs[i] 不等于 epoch 的桶是之前 clear 掉的数据, 视为空桶, 下次放入时再覆盖
+    private int[] bucketEpochs;
+    private int epoch;
+    // 当前 epoch 中用过的桶, 超出数组长度时不再记录, 标记为 dirtyOverflow
+    private int[] dirtyBuckets;
+    private int dirtyCount;
+    private boolean dirtyOverflow;
+
     public TYHashMap() {
         // 默认给数组各最大容量
         table = new Node[DEFAULT_CAPACITY];
         this.comparator = null;
     }
 
+    /**
+     * 预先指定容量, 放入 expectedSize 个元素前不会触发扩容
+     * @param expectedSize 预计元素数量
+     */
+    public TYHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize 不能为负数!");
+        }
+        table = newTable(tableSizeFor((int) (expectedSize / DEFAULT_LOAD_FACTOR) + 1));
+        this.comparator = null;
+    }
+
+    // 按容量创建桶数组, 预分配和扩容都通过这里
+    private static <K, V> Node<K,V>[] newTable(int capacity) {
+        return new Node[capacity];
+    }
+
+    // 大于等于 cap 的最小 2 的幂次方
+    private static int tableSizeFor(int cap) {
+        int n = DEFAULT_CAPACITY;
+        while (n < cap && n < (1 << 30)) {
+            n <<= 1;
+        }
+        return n;
+    }
+
     @Override
     public int size() {
         return size;
@@ -42,10 +96,146 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
         return size == 0;
     }
 
+    /**
+     * 开启变更记录, put / remove / clear 会写入 TYChangeLog, 已经开启时直接返回
+     * @param capacity 环形缓冲区大小, 订阅者落后超过这个数量需要重新同步
+     */
+    public TYChangeLog<K,V> enableChangeCapture(int capacity) {
+        if (changeLog == null) {
+            changeLog = new TYChangeLog<>(this, capacity);
+        }
+        return changeLog;
+    }
+
+    /**
+     * 开启节点回收: remove 掉的节点清空后放入空闲链表, 之后 put 新 key 时优先复用, 减少对象分配
+     * clear 不会回收节点
+     * @param maxFreeNodes 最多保留的空闲节点数量, 0 表示关闭并释放已回收的节点
+     */
+    public void enableNodePool(int maxFreeNodes) {
+        if (maxFreeNodes < 0) {
+            throw new IllegalArgumentException("maxFreeNodes 不能为负数!");
+        }
+        this.maxFreeNodes = maxFreeNodes;
+        while (freeCount > maxFreeNodes) {
+            freeNodes = freeNodes.left;
+            freeCount--;
+        }
+    }
+
+    /**
+     * 从空闲链表中取一个节点, 没有时返回 null. 子类 createNode 中使用
+     */
+    protected Node<K,V> pollFreeNode() {
+        Node<K,V> node = freeNodes;
+        if (node == null) return null;
+        freeNodes = node.left;
+        node.left = null;
+        freeCount--;
+        return node;
+    }
+
+    // 回收已经从红黑树 (以及子类的结构) 中摘除的节点
+    private void recycleNode(Node<K,V> node) {
+        if (freeCount >= maxFreeNodes) return;
+        // 清空所有引用, 不能让已删除的 key / value 通过空闲节点继续被引用
+        node.recycle();
+        node.left = freeNodes;
+        freeNodes = node;
+        freeCount++;
+    }
+
+    /**
+     * 开启复用模式, 适合反复 clear 之后继续使用的 map
+     * clear 不再遍历整个数组: 只用过少量桶时只清空这些桶, 否则只把 epoch 加 1,
+     * 旧的桶视为空桶, 等下次放入时再覆盖 (覆盖之前旧的节点仍然被数组引用)
+     */
+    public void enableReusableClear() {
+        if (bucketEpochs != null) return;
+        restampBuckets();
+    }
+
+    // 重新开始记录: epoch 从 1 开始, 标记为 0 的桶都是旧的, 第一次放入时才会被记录;
+    // 已有节点的桶直接标记为当前 epoch 并记录
+    private void restampBuckets() {
+        bucketEpochs = new int[table.length];
+        epoch = 1;
+        dirtyBuckets = new int[Math.max(DEFAULT_CAPACITY, table.length >>> 3)];
+        dirtyCount = 0;
+        dirtyOverflow = false;
+        if (size == 0) return;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                claimBucket(i, false);
+            }
+        }
+    }
+
+    // 复用模式下, 即将往 index 位置放入节点: 丢弃上一个 epoch 的旧数据, 并记录用过这个桶
+    private void claimBucket(int index) {
+        claimBucket(index, true);
+    }
+
+    private void claimBucket(int index, boolean discardStale) {
+        if (bucketEpochs == null || bucketEpochs[index] == epoch) return;
+        if (discardStale) {
+            table[index] = null;
+        }
+        bucketEpochs[index] = epoch;
+        if (dirtyCount < dirtyBuckets.length) {
+            dirtyBuckets[dirtyCount++] = index;
+        } else {
+            dirtyOverflow = true;
+        }
+    }
+
+    // 取出 index 位置的红黑树根节点, 复用模式下旧 epoch 的桶视为空
+    private Node<K,V> bucket(int index) {
+        if (bucketEpochs != null && bucketEpochs[index] != epoch) return null;
+        return table[index];
+    }
+
+    // 复用模式下的 clear, 每次都开始新的 epoch, 之前所有桶都变成旧的
+    private void clearEpoch() {
+        if (!dirtyOverflow) {
+            // 只清空用过的桶, 同时释放对节点的引用
+            for (int i = 0; i < dirtyCount; i++) {
+                table[dirtyBuckets[i]] = null;
+            }
+        }
+        dirtyCount = 0;
+        dirtyOverflow = false;
+        if (++epoch == 0) {
+            // epoch 用完一轮, 很久以前的标记可能重新有效, 真正清空一次
+            // 标记回到 0, epoch 回到 1, 保证新 epoch 中放入的桶都会被记录
+            Arrays.fill(table, null);
+            Arrays.fill(bucketEpochs, 0);
+            epoch = 1;
+        }
+    }
+
+    // 扩容前把旧 epoch 的桶真正清空, 迁移时就不用再判断
+    private void expungeStaleBuckets() {
+        if (bucketEpochs == null) return;
+        for (int i = 0; i < table.length; i++) {
+            if (bucketEpochs[i] != epoch) {
+                table[i] = null;
+            }
+        }
+    }
+
     @Override
     public void clear() {
+        if (changeLog != null) {
+            changeLog.append(TYChangeLog.CLEAR, null, null);
+        }
         if (size == 0) return;
         size = 0;
+        modCount++;
+        if (bucketEpochs != null) {
+            clearEpoch();
+            return;
+        }
         // 清空数组元素
         for (int i = 0; i < table.length; i++) {
             table[i] = null;
@@ -54,12 +244,26 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
 
     @Override
     public V put(K key, V value) {
+        V oldValue = putVal(key, value);
+        if (changeLog != null) {
+            changeLog.append(TYChangeLog.PUT, key, value);
+        }
+        return oldValue;
+    }
+
+    private V putVal(K key, V value) {
 
         // 扩容
         resize();
 
         // 取出元素索引
         int index = index(key);
+        claimBucket(index);
+        return putVal(index, key, key == null ? 0 : key.hashCode(), value);
+    }
+
+    // 放入 index 位置的红黑树, 调用前必须已经扩容并 claimBucket(index)
+    private V putVal(int index, K key, int h1, V value) {
         // 取出 index 位置的红黑树根节点
         Node<K,V> root = table[index];
         // 处理根节点为空的情况
@@ -69,6 +273,7 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
             // 放入数组中
             table[index] = root;
             size++;
+            modCount++;
             // 红黑树添加后平衡处理
             afterPut(root);
             return null;
@@ -79,7 +284,6 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
         Node<K,V> node = root;
         int cmp = 0;
         K k1 = key;
-        int h1 = k1 == null ? 0 : k1.hashCode();
         Node<K,V> result = null;
         boolean searched = false;
         do {
@@ -126,6 +330,7 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
                 node.key = key;
                 node.value = value;
                 node.hashCode = h1;
+                afterNodeAccess(node);
                 return oldValue;
             }
 
@@ -138,6 +343,7 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
             parent.left = newNode;
         }
         size++;
+        modCount++;
 
         afterPut(newNode);
 
@@ -208,18 +414,104 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
         }
     }
 
+    /**
+     * 预先扩容, 之后放入的元素总数不超过 expectedSize 时不会再触发扩容
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor((int) (expectedSize / DEFAULT_LOAD_FACTOR) + 1);
+        if (capacity > table.length) {
+            transfer(capacity);
+        }
+    }
+
     private void resize() {
 
         // 装填因子: 节点总数量/桶数组长度
         if (size / table.length <= DEFAULT_LOAD_FACTOR) return;
 
         // 装填因子大于 0.75 时才扩容
+        transfer(table.length << 1);
+    }
 
+    /**
+     * 把哈希表重建为 newCapacity 个桶, 用 parallelism 个线程并行迁移节点
+     * 新容量不小于当前容量时, 每个新桶的节点只来自一个旧桶, 各线程按旧桶区间划分, 互不干扰;
+     * 缩容时多个旧桶会合并到同一个新桶, 只能单线程迁移
+     * @param newCapacity 新的桶数量, 向上取 2 的幂次方
+     * @param parallelism 并行线程数, 1 表示在当前线程迁移
+     */
+    public void rehash(int newCapacity, int parallelism) {
+        if (newCapacity <= 0) {
+            throw new IllegalArgumentException("newCapacity 必须大于 0!");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism 必须大于 0!");
+        }
+        int capacity = tableSizeFor(newCapacity);
+        if (parallelism == 1 || capacity < table.length) {
+            // 不能走 transfer: 大表扩容时它会自动用公共线程池并行迁移
+            sequentialTransfer(capacity);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            parallelTransfer(capacity, pool, parallelism);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // 把所有节点移动到容量为 newCapacity 的新数组中
+    private void transfer(int newCapacity) {
+        // 旧数组足够大并且是扩容时, 自动并行迁移
+        if (table.length >= PARALLEL_REHASH_THRESHOLD && newCapacity > table.length) {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            if (pool.getParallelism() > 1) {
+                parallelTransfer(newCapacity, pool, pool.getParallelism());
+                return;
+            }
+        }
+        sequentialTransfer(newCapacity);
+    }
+
+    // 在当前线程迁移所有节点
+    private void sequentialTransfer(int newCapacity) {
+        Node<K,V> []oldTable = replaceTable(newCapacity);
+        transferRange(oldTable, 0, oldTable.length);
+        afterTransfer();
+    }
+
+    // 换成容量为 newCapacity 的空数组, 返回旧数组
+    private Node<K,V>[] replaceTable(int newCapacity) {
+        expungeStaleBuckets();
         Node<K,V> []oldTable = table;
-        table = new Node[oldTable.length << 1];
+        table = newTable(newCapacity);
+        modCount++;
+        return oldTable;
+    }
+
+    // newCapacity 必须不小于当前容量
+    private void parallelTransfer(int newCapacity, ForkJoinPool pool, int parallelism) {
+        Node<K,V> []oldTable = replaceTable(newCapacity);
+
+        // 每个线程大约分到 4 个任务, 便于工作窃取平衡负载
+        int chunk = Math.max(MIN_REHASH_CHUNK, oldTable.length / (parallelism * 4));
+        pool.invoke(new RehashTask(oldTable, 0, oldTable.length, chunk));
+        afterTransfer();
+    }
 
+    // 迁移完成后, 复用模式按新数组重新记录用过的桶 (并行迁移时不能在 moveNode 中记录)
+    private void afterTransfer() {
+        if (bucketEpochs != null) {
+            restampBuckets();
+        }
+    }
+
+    // 迁移 oldTable[from, to) 中的节点. 新数组的容量不小于旧数组时, 不同的区间写入的新桶也不同
+    private void transferRange(Node<K,V>[] oldTable, int from, int to) {
         Queue<Node<K,V>> queue = new LinkedList<>();
-        for (int i = 0; i < oldTable.length; i++) {
+        for (int i = from; i < to; i++) {
             if (oldTable[i] == null) continue;
 
             queue.offer(oldTable[i]);
@@ -241,6 +533,34 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
 
     }
 
+    // 把旧桶区间二分, 直到不超过 chunk 个桶再迁移
+    private class RehashTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Node<K,V>[] oldTable;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        RehashTask(Node<K,V>[] oldTable, int from, int to, int chunk) {
+            this.oldTable = oldTable;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                transferRange(oldTable, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RehashTask(oldTable, from, mid, chunk),
+                      new RehashTask(oldTable, mid, to, chunk));
+        }
+    }
+
     private void moveNode(Node<K,V> newNode) {
         // 重置节点
         newNode.parent = null;
@@ -271,9 +591,9 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
             K k2 = node.key;
             int h2 = node.hashCode;
             if (h1 > h2) {
-
+                cmp = 1;
             } else if (h1 < h2) {
-
+                cmp = -1;
             } else if (k1 != null && k2 != null
                     && k1 instanceof Comparable
                     && k1.getClass() == k2.getClass()
@@ -305,12 +625,19 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
     @Override
     public V get(K key) {
         Node<K,V> node = node(key);
-        return node == null ? null : node.value;
+        if (node == null) return null;
+        afterNodeAccess(node);
+        return node.value;
     }
 
     @Override
     public V remove(K key) {
-        return remove(node(key));
+        Node<K,V> node = node(key);
+        if (node == null) return null;
+        if (changeLog != null) {
+            changeLog.append(TYChangeLog.REMOVE, key, null);
+        }
+        return remove(node);
     }
 
     private V remove(Node<K,V> node) {
@@ -319,6 +646,7 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
         Node<K,V> twoChildrenNode = node;
 
         size--;
+        modCount++;
 
         V oldValue = node.value;
 
@@ -371,6 +699,9 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
         // 交给子类处理删除操作
         subAfterRemove(twoChildrenNode, node);
 
+        // 此时 node 已经完全摘除, 可以回收
+        recycleNode(node);
+
         return oldValue;
 
     }
@@ -394,7 +725,8 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
 
         // 删除的是黑色叶子节点
         // 判断被删除的节点 node 是左还是右
-        boolean left = parent.left == null;
+        // parent.left == null: node 是刚被删除的左叶子; 递归处理下溢时 node 还挂在树上, 要看它本身的位置
+        boolean left = parent.left == null || node.isLeftChild();
         // 找到其兄弟节点, 不能用 node.sibling(), 因为在此刻, 那个方法求出的兄弟节点不准确了
         Node<K,V> sibling = left ? parent.right : parent.left;
         if (left) {
@@ -483,6 +815,76 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
 
     }
 
+    // 节点被 get 访问, 或者 put 覆盖了旧值之后调用, 交给子类处理
+    protected void afterNodeAccess(Node<K,V> node) {
+
+    }
+
+    /**
+     * 批量查找, 结果按顺序放入 out 中, 找不到的为 null
+     * 先算出所有 key 的索引并排序, 同一个桶的 key 连续查找, 数组和红黑树都只需要加载一次
+     */
+    public void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("out 的长度不能小于 keys 的长度!");
+        }
+        int[] hashes = new int[keys.length];
+        long[] order = sortByIndex(keys, hashes);
+        for (long item : order) {
+            int i = (int) item;
+            Node<K,V> root = bucket((int) (item >>> 32));
+            Node<K,V> node = root == null ? null : node(root, keys[i], hashes[i]);
+            if (node == null) {
+                out[i] = null;
+            } else {
+                afterNodeAccess(node);
+                out[i] = node.value;
+            }
+        }
+    }
+
+    /**
+     * 批量添加, 先一次性扩容到足够的容量, 再按桶的顺序放入
+     * 同一个 key 出现多次时, 后面的覆盖前面的
+     *
+     * 每个桶只 claim 一次, 循环中不再检查扩容, 也不重复计算 hashCode;
+     * 但同一个桶里的 key 仍然各自从根节点查找一次: 插入后的旋转会改变树的形状,
+     * 上一个 key 的查找路径不能复用
+     */
+    public void putAll(K[] keys, V[] values) {
+        if (values.length < keys.length) {
+            throw new IllegalArgumentException("values 的长度不能小于 keys 的长度!");
+        }
+        ensureCapacity(size + keys.length);
+        int[] hashes = new int[keys.length];
+        long[] order = sortByIndex(keys, hashes);
+        int claimed = -1;
+        for (long item : order) {
+            int i = (int) item;
+            int index = (int) (item >>> 32);
+            if (index != claimed) {
+                claimBucket(index);
+                claimed = index;
+            }
+            putVal(index, keys[i], hashes[i], values[i]);
+            if (changeLog != null) {
+                changeLog.append(TYChangeLog.PUT, keys[i], values[i]);
+            }
+        }
+    }
+
+    // 高 32 位是桶的索引, 低 32 位是 key 在数组中的位置, 排序后同一个桶的 key 相邻, 且保持原来的先后顺序
+    private long[] sortByIndex(K[] keys, int[] hashes) {
+        long[] order = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            int hash = keys[i] == null ? 0 : keys[i].hashCode();
+            hashes[i] = hash;
+            order[i] = ((long) ((hash ^ (hash >>> 16)) & (table.length - 1)) << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
     @Override
     public boolean containsKey(K key) {
         return node(key) != null;
@@ -498,9 +900,10 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
 
         for (int i = 0; i < table.length; i++) {
 
-            if (table[i] == null) continue;
+            Node<K,V> root = bucket(i);
+            if (root == null) continue;
 
-            queue.offer(table[i]);
+            queue.offer(root);
 
             while (!queue.isEmpty()) {
                 Node<K,V> node = queue.poll();
@@ -526,8 +929,10 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
 
         Queue<Node<K,V>> queue = new LinkedList<>();
         for (int i = 0; i < table.length; i++) {
-            if (table[i] == null) continue;
+            Node<K,V> root = bucket(i);
+            if (root == null) continue;
 
+            queue.offer(root);
             while (!queue.isEmpty()) {
 
                 Node<K,V> node = queue.poll();
@@ -561,9 +966,48 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
         return (node.hashCode ^ (node.hashCode >>> 16)) & (table.length - 1);
     }
 
+    // 以下供 TYMapAdapter 的视图按节点遍历使用, 不分配任何对象
+
+    Node<K,V> findNode(K key) {
+        return node(key);
+    }
+
+    // 第一个节点: 第一个非空桶中最左边的节点
+    Node<K,V> firstNode() {
+        if (size == 0) return null;
+        return firstNodeFrom(0);
+    }
+
+    // 下一个节点: 同一个桶里中序遍历的后继, 没有的话就是后面第一个非空桶中最左边的节点
+    Node<K,V> nextNode(Node<K,V> node) {
+        Node<K,V> s = successor(node);
+        if (s != null) return s;
+        return firstNodeFrom(index(node) + 1);
+    }
+
+    private Node<K,V> firstNodeFrom(int start) {
+        for (int i = start; i < table.length; i++) {
+            Node<K,V> node = bucket(i);
+            if (node == null) continue;
+            while (node.left != null) {
+                node = node.left;
+            }
+            return node;
+        }
+        return null;
+    }
+
+    // 直接修改节点的值, 不影响访问顺序
+    void setNodeValue(Node<K,V> node, V value) {
+        node.value = value;
+        if (changeLog != null) {
+            changeLog.append(TYChangeLog.PUT, node.key, value);
+        }
+    }
+
     private Node<K,V> node(K key) {
 
-        Node<K,V> root = table[index(key)];
+        Node<K,V> root = bucket(index(key));
         return root == null ? null : node(root, key);
 
 //        int index = index(key);
@@ -583,7 +1027,11 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
     }
 
     private Node<K,V> node(Node<K,V> node, K k1) {
-        int h1 = k1 == null ? 0 : k1.hashCode();
+        return node(node, k1, k1 == null ? 0 : k1.hashCode());
+    }
+
+    // h1 是 k1 的 hashCode, 批量查找时提前算好
+    private Node<K,V> node(Node<K,V> node, K k1, int h1) {
         // 存查找结果
         Node<K,V> result = null;
         int cmp = 0;
@@ -602,10 +1050,10 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
                         && k1 instanceof Comparable
                         && (cmp = ((Comparable) k1).compareTo(k2)) != 0) {
                 node = cmp > 0 ? node.right : node.left;
-            } else if (node.right != null && (result = node(node.right, k1)) != null) {
+            } else if (node.right != null && (result = node(node.right, k1, h1)) != null) {
                 // 往右找
                 return result;
-            } else if (node.left != null && (result = node(node.left, k1)) != null) {
+            } else if (node.left != null && (result = node(node.left, k1, h1)) != null) {
                 // 往左找
                 return result;
             } else {
@@ -616,7 +1064,10 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
     }
 
     protected Node<K,V> createNode(K key, V value, Node<K,V> parent) {
-        return new Node<>(key, value, parent);
+        Node<K,V> node = pollFreeNode();
+        if (node == null) return new Node<>(key, value, parent);
+        node.init(key, value, parent);
+        return node;
     }
 
     protected static class Node<K,V> {
@@ -628,10 +1079,26 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
         Node<K,V> right;
         Node<K,V> parent;
         public Node(K key, V value, Node<K,V> parent) {
+            init(key, value, parent);
+        }
+
+        // 新建或者复用回收的节点时初始化
+        void init(K key, V value, Node<K,V> parent) {
             this.key = key;
             this.hashCode = key == null ? 0 : key.hashCode();
             this.value = value;
             this.parent = parent;
+            this.color = RED;
+        }
+
+        // 回收前清空所有引用
+        void recycle() {
+            key = null;
+            value = null;
+            hashCode = 0;
+            left = null;
+            right = null;
+            parent = null;
         }
 
         public boolean isLeaf() {
@@ -712,8 +1179,8 @@ public class TYHashMap<K, V> implements TYMap<K, V> {
      * @param grand 节点
      */
     private void rotateLeft(Node<K,V> grand) {
-        // 找到 parent 节点, 能来到这, 说明 parent 是 grand 的左子树
-        Node<K,V> parent = grand.left;
+        // 找到 parent 节点, 能来到这, 说明 parent 是 grand 的右子树
+        Node<K,V> parent = grand.right;
         Node<K,V> child = parent.left;
 
         // 旋转
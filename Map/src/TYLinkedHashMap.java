@@ -1,12 +1,132 @@
+import java.util.ArrayList;
+import java.util.List;
+
 
 public class TYLinkedHashMap<K,V> extends TYHashMap<K,V> {
 
     private LinkedNode<K,V> first;
     private LinkedNode<K,V> last;
 
+    // true: 按访问顺序排列, 最近访问的节点移到链表尾部; false: 按添加顺序排列
+    private final boolean accessOrder;
+
+    // 淘汰最老节点时的回调, 按添加顺序调用
+    private final List<Visitor<K, V>> evictionListeners = new ArrayList<>(1);
+
+    public TYLinkedHashMap() {
+        super();
+        this.accessOrder = false;
+    }
+
+    public TYLinkedHashMap(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    public TYLinkedHashMap(int expectedSize, boolean accessOrder) {
+        super(expectedSize);
+        this.accessOrder = accessOrder;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int oldSize = size();
+        V oldValue = super.put(key, value);
+        // 添加了新节点, 询问子类是否要删除最老的节点 (链表头部)
+        if (size() > oldSize && first != null && removeEldestEntry(first.key, first.value)) {
+            K eldestKey = first.key;
+            V eldestValue = first.value;
+            remove(eldestKey);
+            for (int i = 0; i < evictionListeners.size(); i++) {
+                evictionListeners.get(i).visit(eldestKey, eldestValue);
+            }
+        }
+        return oldValue;
+    }
+
+    /**
+     * removeEldestEntry 返回 true 删除最老的节点之后回调, 返回值被忽略
+     * 包装这个 map 的结构 (比如 TYBloomFilterMap) 用它同步删除被淘汰的 key;
+     * 可以添加多个, 互不覆盖
+     */
+    public void addEvictionListener(Visitor<K, V> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener 不能为空!");
+        }
+        evictionListeners.add(listener);
+    }
+
+    public void removeEvictionListener(Visitor<K, V> listener) {
+        evictionListeners.remove(listener);
+    }
+
+    // 要保持添加顺序, 不能按桶的顺序放入
+    @Override
+    public void putAll(K[] keys, V[] values) {
+        if (values.length < keys.length) {
+            throw new IllegalArgumentException("values 的长度不能小于 keys 的长度!");
+        }
+        ensureCapacity(size() + keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    // 按访问顺序排列时, 要按数组顺序访问, 否则桶的顺序会打乱 LRU 顺序
+    @Override
+    public void getAll(K[] keys, V[] out) {
+        if (!accessOrder) {
+            super.getAll(keys, out);
+            return;
+        }
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("out 的长度不能小于 keys 的长度!");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = get(keys[i]);
+        }
+    }
+
+    /**
+     * 每次添加新节点后调用, 返回 true 会删除最老的节点, 可以用来实现 LRU 缓存
+     * @param key 最老节点的 key
+     * @param value 最老节点的 value
+     */
+    protected boolean removeEldestEntry(K key, V value) {
+        return false;
+    }
+
+    // 按访问顺序排列时, 把访问的节点移到链表尾部
+    @Override
+    protected void afterNodeAccess(Node<K, V> node) {
+        LinkedNode<K,V> linkedNode = (LinkedNode<K, V>) node;
+        if (!accessOrder || linkedNode == last) return;
+        // 改变了遍历顺序, 和 java.util.LinkedHashMap 一样算作结构修改
+        modCount++;
+
+        LinkedNode<K,V> prev = linkedNode.prev;
+        LinkedNode<K,V> next = linkedNode.next;
+        if (prev == null) {
+            first = next;
+        } else {
+            prev.next = next;
+        }
+        // linkedNode 不是尾节点, next 必然不为空
+        next.prev = prev;
+
+        linkedNode.prev = last;
+        linkedNode.next = null;
+        last.next = linkedNode;
+        last = linkedNode;
+    }
+
     @Override
     protected TYHashMap.Node<K, V> createNode(K key, V value, TYHashMap.Node<K, V> parent) {
-        LinkedNode<K,V> node = new LinkedNode<>(key, value, parent);
+        LinkedNode<K,V> node = (LinkedNode<K, V>) pollFreeNode();
+        if (node == null) {
+            node = new LinkedNode<>(key, value, parent);
+        } else {
+            node.init(key, value, parent);
+        }
 
         if (first == null) {
             first = last = node;
@@ -27,6 +147,13 @@ public class TYLinkedHashMap<K,V> extends TYHashMap<K,V> {
         public LinkedNode(K key, V value, Node<K,V> parent) {
             super(key, value, parent);
         }
+
+        @Override
+        void recycle() {
+            super.recycle();
+            prev = null;
+            next = null;
+        }
     }
 
     @Override
@@ -36,6 +163,17 @@ public class TYLinkedHashMap<K,V> extends TYHashMap<K,V> {
         last = null;
     }
 
+    // 按链表顺序遍历节点
+    @Override
+    Node<K, V> firstNode() {
+        return first;
+    }
+
+    @Override
+    Node<K, V> nextNode(Node<K, V> node) {
+        return ((LinkedNode<K, V>) node).next;
+    }
+
     // 按链表方式来重新遍历
     @Override
     public void traversal(Visitor<K, V> visitor) {
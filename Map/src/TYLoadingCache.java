@@ -0,0 +1,265 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自动加载的缓存, 同一个 key 同时只会加载一次
+ *
+ * 第一个发现 key 不存在的线程放入一个未完成的 CompletableFuture 占位, 然后自己调用 loader 加载;
+ * 之后并发访问这个 key 的线程都等待同一个 future, 不会重复调用 loader.
+ * 等待在锁外进行, 锁只在查找 / 放入占位时短暂持有, 虚拟线程等待时不会占住平台线程
+ *
+ * 设置了 refreshAfterWrite 时, 数据写入超过这个时间后再被访问, 会在 executor 中异步重新加载,
+ * 加载完成前仍然返回旧值; 超过 expireAfterWrite 的数据视为不存在, 需要同步重新加载
+ */
+public class TYLoadingCache<K, V> {
+
+    public interface Loader<K, V> {
+
+        V load(K key) throws Exception;
+
+        /**
+         * 批量加载, 默认逐个调用 load. 返回结果中没有的 key 会再单独调用 load
+         */
+        default TYMap<K, V> loadAll(K[] keys) throws Exception {
+            TYHashMap<K, V> result = new TYHashMap<>(keys.length);
+            for (K key : keys) {
+                result.put(key, load(key));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * loader 加载失败时抛出, cause 是 loader 抛出的异常
+     */
+    public static class LoadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LoadException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        // 加载完成的时间
+        volatile long loadedAt;
+        volatile boolean refreshing;
+
+        boolean isLoaded() {
+            return future.isDone() && !future.isCompletedExceptionally();
+        }
+    }
+
+    private final TYSynchronizedMap<K, Entry<V>> map = new TYSynchronizedMap<>(new TYHashMap<K, Entry<V>>());
+    private final Loader<K, V> loader;
+    private final Executor executor;
+    private final long expireAfterWriteNanos;
+    private final long refreshAfterWriteNanos;
+
+    public TYLoadingCache(Loader<K, V> loader) {
+        this(loader, 0, 0, TimeUnit.NANOSECONDS, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param expireAfterWrite 写入后多久过期, 0 表示不过期
+     * @param refreshAfterWrite 写入后多久开始异步刷新, 0 表示不刷新
+     * @param executor 执行异步刷新的线程池
+     */
+    public TYLoadingCache(Loader<K, V> loader, long expireAfterWrite, long refreshAfterWrite,
+                          TimeUnit unit, Executor executor) {
+        if (loader == null || executor == null) {
+            throw new IllegalArgumentException("loader 和 executor 不能为空!");
+        }
+        this.loader = loader;
+        this.executor = executor;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.refreshAfterWriteNanos = unit.toNanos(refreshAfterWrite);
+    }
+
+    /**
+     * 获取 key 对应的值, 不存在时加载 (同一个 key 的并发请求只加载一次)
+     * @throws LoadException 加载失败
+     */
+    public V get(K key) {
+        Entry<V> entry;
+        boolean owner = false;
+        synchronized (map) {
+            entry = map.get(key);
+            if (entry == null || isExpired(entry)) {
+                entry = new Entry<>();
+                map.put(key, entry);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            load(key, entry);
+        } else {
+            refreshIfNeeded(key, entry);
+        }
+        return join(key, entry);
+    }
+
+    /**
+     * 只获取已经加载好的值, 不会触发加载
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null || !entry.isLoaded() || isExpired(entry)) return null;
+        return entry.future.getNow(null);
+    }
+
+    /**
+     * 批量获取, 不存在的 key 一起交给 loader.loadAll 加载
+     * 正在被其他线程加载的 key 不会重复加载, 等待那次加载的结果
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TYHashMap<K, V> getAll(K[] keys) {
+        Entry<V>[] entries = new Entry[keys.length];
+        K[] missing = Arrays.copyOf(keys, keys.length);
+        Entry<V>[] owned = new Entry[keys.length];
+        int missingCount = 0;
+
+        synchronized (map) {
+            for (int i = 0; i < keys.length; i++) {
+                Entry<V> entry = map.get(keys[i]);
+                if (entry == null || isExpired(entry)) {
+                    entry = new Entry<>();
+                    map.put(keys[i], entry);
+                    missing[missingCount] = keys[i];
+                    owned[missingCount] = entry;
+                    missingCount++;
+                }
+                entries[i] = entry;
+            }
+        }
+
+        if (missingCount > 0) {
+            loadAll(Arrays.copyOf(missing, missingCount), owned);
+        }
+
+        TYHashMap<K, V> result = new TYHashMap<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            refreshIfNeeded(keys[i], entries[i]);
+            result.put(keys[i], join(keys[i], entries[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 直接放入一个值, 正在等待这个 key 加载的线程仍然拿到加载的结果
+     */
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<>();
+        complete(entry, value);
+        map.put(key, entry);
+    }
+
+    public void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public void invalidateAll() {
+        map.clear();
+    }
+
+    /**
+     * 包括正在加载中的 key
+     */
+    public int size() {
+        return map.size();
+    }
+
+    private void load(K key, Entry<V> entry) {
+        try {
+            complete(entry, loader.load(key));
+        } catch (Throwable e) {
+            fail(key, entry, e);
+        }
+    }
+
+    private void loadAll(K[] keys, Entry<V>[] entries) {
+        TYMap<K, V> loaded;
+        try {
+            loaded = loader.loadAll(keys);
+        } catch (Throwable e) {
+            for (int i = 0; i < keys.length; i++) {
+                fail(keys[i], entries[i], e);
+            }
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (loaded != null && loaded.containsKey(keys[i])) {
+                complete(entries[i], loaded.get(keys[i]));
+            } else {
+                load(keys[i], entries[i]);
+            }
+        }
+    }
+
+    private void complete(Entry<V> entry, V value) {
+        entry.loadedAt = System.nanoTime();
+        entry.future.complete(value);
+    }
+
+    // 加载失败, 删除占位, 下次访问重新加载
+    private void fail(K key, Entry<V> entry, Throwable e) {
+        synchronized (map) {
+            if (map.get(key) == entry) {
+                map.remove(key);
+            }
+        }
+        entry.future.completeExceptionally(e);
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return expireAfterWriteNanos > 0 && entry.isLoaded()
+                && System.nanoTime() - entry.loadedAt > expireAfterWriteNanos;
+    }
+
+    // 超过刷新时间时, 异步重新加载, 同一个 entry 只刷新一次
+    private void refreshIfNeeded(final K key, final Entry<V> entry) {
+        if (refreshAfterWriteNanos <= 0 || !entry.isLoaded() || entry.refreshing) return;
+        if (System.nanoTime() - entry.loadedAt <= refreshAfterWriteNanos) return;
+
+        synchronized (entry) {
+            if (entry.refreshing) return;
+            entry.refreshing = true;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Entry<V> refreshed = new Entry<>();
+                    complete(refreshed, loader.load(key));
+                    synchronized (map) {
+                        // 期间被删除或者替换过, 就不再放入
+                        if (map.get(key) == entry) {
+                            map.put(key, refreshed);
+                        }
+                    }
+                } catch (Throwable e) {
+                    // 刷新失败继续使用旧值, 下次访问时再试
+                    entry.refreshing = false;
+                }
+            }
+        });
+    }
+
+    private V join(K key, Entry<V> entry) {
+        try {
+            return entry.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LoadException("等待加载时被中断: " + key, e);
+        } catch (ExecutionException e) {
+            throw new LoadException("加载失败: " + key, e.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,335 @@
+import java.lang.reflect.Array;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 把 TYHashMap (以及 TYLinkedHashMap) 适配成 java.util.Map, 可以直接替换已有代码中的 Map
+ *
+ * keySet / values / entrySet 都是视图, 直接遍历 map 自己的节点, 不复制数据;
+ * TYLinkedHashMap 按链表顺序遍历, TYHashMap 按桶的顺序遍历.
+ * entrySet 的迭代器每次 next 都返回同一个 Entry 对象 (只是指向的节点不同), 遍历时不分配内存,
+ * 所以不要把迭代得到的 Entry 保存下来, 需要保存时用 entrySet().toArray() 得到副本
+ *
+ * 遍历期间只能通过迭代器的 remove 删除; 直接增删 key 或 clear 之后, 迭代器的 next / remove
+ * 会抛出 ConcurrentModificationException (按访问顺序排列的 TYLinkedHashMap, get 也会改变顺序).
+ * 和 java.util.HashMap 一样, 这只是尽力检测, 不能代替多线程下的同步
+ */
+public class TYMapAdapter<K, V> extends AbstractMap<K, V> {
+
+    final TYHashMap<K, V> map;
+
+    private EntrySet entrySet;
+    private KeySet keySet;
+    private Values values;
+
+    public TYMapAdapter(TYHashMap<K, V> map) {
+        if (map == null) {
+            throw new IllegalArgumentException("map 不能为空!");
+        }
+        this.map = map;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return map.get((K) key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        return map.containsKey((K) key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsValue(Object value) {
+        return map.containsValue((V) value);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return map.put(key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        return map.remove((K) key);
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        if (keySet == null) {
+            keySet = new KeySet();
+        }
+        return keySet;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (values == null) {
+            values = new Values();
+        }
+        return values;
+    }
+
+    // entrySet 迭代得到的 Entry 调用 setValue 时执行, 子类可以覆盖以加锁或检查参数
+    V setEntryValue(TYHashMap.Node<K, V> node, V value) {
+        V oldValue = node.value;
+        map.setNodeValue(node, value);
+        return oldValue;
+    }
+
+    /**
+     * 按节点遍历, next 直接沿着节点走, 不需要队列
+     * 快速失败: 创建迭代器之后 map 被迭代器以外的方式做了结构修改, 抛出 ConcurrentModificationException
+     */
+    private abstract class NodeIterator<T> implements Iterator<T> {
+        private TYHashMap.Node<K, V> next = map.firstNode();
+        private TYHashMap.Node<K, V> lastReturned;
+        private int expectedModCount = map.modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        TYHashMap.Node<K, V> nextNode() {
+            checkForComodification();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = map.nextNode(next);
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            // 删除度为 2 的节点时, 后继节点的内容会搬到被删除的节点上, 后继节点被摘除 (可能被回收),
+            // 所以先记下 next 的 key, 删除后再重新找到它所在的节点
+            boolean hasNext = next != null;
+            K nextKey = hasNext ? next.key : null;
+            TYMapAdapter.this.remove(lastReturned.key);
+            lastReturned = null;
+            if (hasNext) {
+                next = map.findNode(nextKey);
+            }
+            expectedModCount = map.modCount;
+        }
+
+        private void checkForComodification() {
+            if (map.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    private final class EntryIterator extends NodeIterator<Entry<K, V>> {
+        private final FlyweightEntry entry = new FlyweightEntry();
+
+        @Override
+        public Entry<K, V> next() {
+            entry.node = nextNode();
+            return entry;
+        }
+    }
+
+    private final class KeyIterator extends NodeIterator<K> {
+        @Override
+        public K next() {
+            return nextNode().key;
+        }
+    }
+
+    private final class ValueIterator extends NodeIterator<V> {
+        @Override
+        public V next() {
+            return nextNode().value;
+        }
+    }
+
+    // 迭代器复用的 Entry, 读写的都是当前节点
+    private final class FlyweightEntry implements Entry<K, V> {
+        TYHashMap.Node<K, V> node;
+
+        @Override
+        public K getKey() {
+            return node.key;
+        }
+
+        @Override
+        public V getValue() {
+            return node.value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            return setEntryValue(node, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(node.key, e.getKey()) && Objects.equals(node.value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(node.key) ^ Objects.hashCode(node.value);
+        }
+
+        @Override
+        public String toString() {
+            return node.key + "=" + node.value;
+        }
+    }
+
+    // 视图的 size / contains / remove 都通过外部类的方法, 子类加锁时视图也跟着加锁
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return TYMapAdapter.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return TYMapAdapter.this.remove(e.getKey(), e.getValue());
+        }
+
+        @Override
+        public void clear() {
+            TYMapAdapter.this.clear();
+        }
+
+        // 迭代器返回的是同一个 Entry, 转成数组时必须复制
+        @Override
+        public Object[] toArray() {
+            return toArray(new Object[0]);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T[] toArray(T[] a) {
+            int size = size();
+            if (a.length < size) {
+                a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+            }
+            int i = 0;
+            for (Entry<K, V> e : this) {
+                a[i++] = (T) new SimpleEntry<>(e.getKey(), e.getValue());
+            }
+            if (i < a.length) {
+                a[i] = null;
+            }
+            return a;
+        }
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public int size() {
+            return TYMapAdapter.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!containsKey(o)) return false;
+            TYMapAdapter.this.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            TYMapAdapter.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public int size() {
+            return TYMapAdapter.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            TYMapAdapter.this.clear();
+        }
+    }
+
+}
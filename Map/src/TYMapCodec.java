@@ -0,0 +1,241 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * TYHashMap / TYLinkedHashMap 的流式二进制编解码
+ *
+ * 格式: MAGIC, size, 然后是 size 条 [key][value] 记录
+ * 每个 key / value 前面有 1 个字节标记是否为 null, 具体内容交给 Serializer 处理
+ * 写出时边遍历边写, 读入时先根据 size 预分配数组, 再直接把节点挂到红黑树上
+ */
+public class TYMapCodec<K, V> {
+
+    private static final int MAGIC = 0x54594D31;    // "TYM1"
+
+    // 读写缓冲区大小, 不会把整个 map 缓存在内存中
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    // 读取时按头部的 size 预先分配容量的上限, 防止损坏的数据一次分配巨大的数组
+    private static final int MAX_PRESIZE = 1 << 16;
+
+    /**
+     * key / value 的序列化方式
+     */
+    public interface Serializer<T> {
+
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+
+        Serializer<String> STRING = new Serializer<String>() {
+            @Override
+            public void write(String value, DataOutput out) throws IOException {
+                // 不用 writeUTF, 它限制了长度不能超过 64K
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new StreamCorruptedException("字符串长度不能为负数: " + length);
+                }
+                // 长度来自外部数据, 不能直接按它分配数组; 分段读取, 数据不够时在分配之前就 EOF
+                byte[] bytes = new byte[Math.min(length, BUFFER_SIZE)];
+                int read = 0;
+                while (read < length) {
+                    if (read == bytes.length) {
+                        bytes = Arrays.copyOf(bytes, (int) Math.min(length, (long) bytes.length << 1));
+                    }
+                    int n = bytes.length - read;
+                    in.readFully(bytes, read, n);
+                    read += n;
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+
+        Serializer<Integer> INTEGER = new Serializer<Integer>() {
+            @Override
+            public void write(Integer value, DataOutput out) throws IOException {
+                out.writeInt(value);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+
+        Serializer<Long> LONG = new Serializer<Long>() {
+            @Override
+            public void write(Long value, DataOutput out) throws IOException {
+                out.writeLong(value);
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                return in.readLong();
+            }
+        };
+    }
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+
+    public TYMapCodec(Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        if (keySerializer == null || valueSerializer == null) {
+            throw new IllegalArgumentException("serializer 不能为空!");
+        }
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * 写出 map, TYLinkedHashMap 按链表顺序写出. 写完会 flush, 但不会关闭 out
+     */
+    public void write(TYMap<K, V> map, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        write(map, (DataOutput) data);
+        data.flush();
+    }
+
+    public void write(TYMap<K, V> map, WritableByteChannel channel) throws IOException {
+        write(map, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * 写出 map 的内容, 可以直接配合 RandomAccessFile 等 DataOutput 使用
+     */
+    public void write(TYMap<K, V> map, final DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(map.size());
+
+        // Visitor 不能抛出受检异常, 先存起来, 停止遍历后再抛出
+        final IOException[] error = new IOException[1];
+        map.traversal(new TYMap.Visitor<K, V>() {
+            @Override
+            boolean visit(K key, V value) {
+                try {
+                    writeKey(key, out);
+                    writeValue(value, out);
+                    return false;
+                } catch (IOException e) {
+                    error[0] = e;
+                    return true;
+                }
+            }
+        });
+        if (error[0] != null) throw error[0];
+    }
+
+    /**
+     * 读取为 TYHashMap. 读取时会预读缓冲, 调用后 in 中剩余的数据不再可用
+     */
+    public TYHashMap<K, V> read(InputStream in) throws IOException {
+        return read(new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE)), false);
+    }
+
+    public TYHashMap<K, V> read(ReadableByteChannel channel) throws IOException {
+        return read(Channels.newInputStream(channel));
+    }
+
+    /**
+     * 读取为 TYLinkedHashMap, 保持写出时的顺序
+     */
+    public TYLinkedHashMap<K, V> readLinked(InputStream in) throws IOException {
+        return (TYLinkedHashMap<K, V>) read(new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE)), true);
+    }
+
+    public TYLinkedHashMap<K, V> readLinked(ReadableByteChannel channel) throws IOException {
+        return readLinked(Channels.newInputStream(channel));
+    }
+
+    private TYHashMap<K, V> read(DataInput in, boolean linked) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("不是 TYMapCodec 写出的数据");
+        }
+        int size = in.readInt();
+        if (size < 0) {
+            throw new StreamCorruptedException("size 不能为负数: " + size);
+        }
+
+        // size 来自外部数据, 不可信, 预先分配的容量有上限, 超出后由 resize 扩容
+        int presize = Math.min(size, MAX_PRESIZE);
+        TYHashMap<K, V> map = linked ? new TYLinkedHashMap<K, V>(presize) : new TYHashMap<K, V>(presize);
+        for (int i = 0; i < size; i++) {
+            K key = readKey(in);
+            V value = readValue(in);
+            map.put(key, value);
+            // 正常写出的数据 key 互不相同, size 没有增加说明 key 重复, 数据损坏
+            if (map.size() != i + 1) {
+                throw new StreamCorruptedException("重复的 key: " + key);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 流式读取 write 写出的数据, 不构建 map, 每条记录直接交给 visitor
+     * visitor 返回 true 后不再回调, 但仍会读完剩余的记录
+     */
+    public void readEntries(DataInput in, TYMap.Visitor<K, V> visitor) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("不是 TYMapCodec 写出的数据");
+        }
+        int size = in.readInt();
+        boolean stop = false;
+        for (int i = 0; i < size; i++) {
+            K key = readKey(in);
+            V value = readValue(in);
+            if (!stop) {
+                stop = visitor.visit(key, value);
+            }
+        }
+    }
+
+    void writeKey(K key, DataOutput out) throws IOException {
+        writeNullable(keySerializer, key, out);
+    }
+
+    void writeValue(V value, DataOutput out) throws IOException {
+        writeNullable(valueSerializer, value, out);
+    }
+
+    K readKey(DataInput in) throws IOException {
+        return readNullable(keySerializer, in);
+    }
+
+    V readValue(DataInput in) throws IOException {
+        return readNullable(valueSerializer, in);
+    }
+
+    private static <T> void writeNullable(Serializer<T> serializer, T value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        serializer.write(value, out);
+    }
+
+    private static <T> T readNullable(Serializer<T> serializer, DataInput in) throws IOException {
+        return in.readBoolean() ? serializer.read(in) : null;
+    }
+
+}
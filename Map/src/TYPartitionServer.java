@@ -0,0 +1,139 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 在本机端口上提供一个 TYMap 分区, 配合 TYRemoteMap 使用
+ * 可以用几个 TYPartitionServer 模拟多台机器, 测试 TYPartitionedMap
+ *
+ * 每个连接一个线程, 请求格式: [操作码][参数], 参数和返回值用 TYMapCodec 编码
+ */
+public class TYPartitionServer<K, V> implements Closeable {
+
+    static final byte SIZE = 1;
+    static final byte CLEAR = 2;
+    static final byte PUT = 3;
+    static final byte GET = 4;
+    static final byte REMOVE = 5;
+    static final byte CONTAINS_KEY = 6;
+    static final byte CONTAINS_VALUE = 7;
+    static final byte TRAVERSAL = 8;
+
+    private final TYMap<K, V> map = new TYSynchronizedMap<>(new TYHashMap<K, V>());
+    private final TYMapCodec<K, V> codec;
+    private final ServerSocket serverSocket;
+
+    /**
+     * @param port 端口, 传 0 由系统分配, 通过 getPort() 获取
+     */
+    public TYPartitionServer(int port, TYMapCodec<K, V> codec) throws IOException {
+        this.codec = codec;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "TYPartitionServer-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // close() 之后 accept 会抛出异常, 直接退出
+                return;
+            }
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "TYPartitionServer-" + getPort() + "-" + socket.getPort());
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    // 客户端关闭了连接
+                    return;
+                }
+                handle(op, in, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 连接异常断开, 丢弃这个连接即可
+        }
+    }
+
+    private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case SIZE:
+                out.writeInt(map.size());
+                break;
+            case CLEAR:
+                map.clear();
+                // 返回一个确认, 客户端等待清空完成后再返回
+                out.writeBoolean(true);
+                break;
+            case PUT: {
+                K key = codec.readKey(in);
+                V value = codec.readValue(in);
+                codec.writeValue(map.put(key, value), out);
+                break;
+            }
+            case GET:
+                codec.writeValue(map.get(codec.readKey(in)), out);
+                break;
+            case REMOVE:
+                codec.writeValue(map.remove(codec.readKey(in)), out);
+                break;
+            case CONTAINS_KEY:
+                out.writeBoolean(map.containsKey(codec.readKey(in)));
+                break;
+            case CONTAINS_VALUE:
+                out.writeBoolean(map.containsValue(codec.readValue(in)));
+                break;
+            case TRAVERSAL:
+                // 在锁内写出, 保证 size 和记录数一致
+                synchronized (map) {
+                    codec.write(map, (DataOutput) out);
+                }
+                break;
+            default:
+                throw new IOException("未知的操作码: " + op);
+        }
+    }
+
+}
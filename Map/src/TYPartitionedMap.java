@@ -0,0 +1,512 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 一致性哈希分区的 TYMap
+ *
+ * 每个节点在哈希环上放置 virtualNodes 个虚拟节点, key 顺时针找到的第一个节点是主节点,
+ * 之后 replicationFactor - 1 个不同的节点是副本节点, 写操作会同步写到所有副本上
+ *
+ * 节点的存储只要是线程安全的 TYMap 即可: 进程内用 TYSynchronizedMap, 本机 socket 用 TYRemoteMap
+ * 节点加入 / 离开时, 新的环立即生效, 后台线程只迁移所属节点发生变化的 key.
+ * 迁移期间读不到的 key 会回退到旧环上的节点去找
+ */
+public class TYPartitionedMap<K, V> implements TYMap<K, V> {
+
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final int replicationFactor;
+
+    // 当前的环, 以及迁移过程中的旧环 (迁移结束后为 null)
+    private volatile Ring<K, V> ring;
+    private volatile Ring<K, V> previousRing;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    // 同一个 key 的 put / remove 需要在所有副本上一起完成, 按 key 分段加锁
+    private final Object[] stripes = new Object[64];
+
+    // 普通读写和迁移都持有读锁, 只有切换环和 clear 时持有写锁
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 成员变化按顺序在后台线程中执行
+    private final ExecutorService rebalancer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "TYPartitionedMap-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public TYPartitionedMap() {
+        this(DEFAULT_VIRTUAL_NODES, 1);
+    }
+
+    public TYPartitionedMap(int virtualNodes, int replicationFactor) {
+        if (virtualNodes <= 0 || replicationFactor <= 0) {
+            throw new IllegalArgumentException("virtualNodes 和 replicationFactor 必须大于 0!");
+        }
+        this.virtualNodes = virtualNodes;
+        this.replicationFactor = replicationFactor;
+        this.ring = new Ring<>(new ArrayList<Member<K, V>>(), virtualNodes);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * 添加一个进程内节点, 存储为 TYSynchronizedMap 包装的 TYHashMap
+     */
+    public Future<?> addNode(String id) {
+        return addNode(id, new TYSynchronizedMap<>(new TYHashMap<K, V>()));
+    }
+
+    /**
+     * 添加节点, store 必须是线程安全的 (例如 TYSynchronizedMap, TYRemoteMap)
+     * @return 后台迁移完成的 Future
+     */
+    public Future<?> addNode(final String id, final TYMap<K, V> store) {
+        if (id == null || store == null) {
+            throw new IllegalArgumentException("id 和 store 不能为空!");
+        }
+        return rebalancer.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<Member<K, V>> members = new ArrayList<>(ring.members);
+                for (Member<K, V> member : members) {
+                    if (member.id.equals(id)) {
+                        throw new IllegalArgumentException("节点已存在: " + id);
+                    }
+                }
+                members.add(new Member<>(id, store));
+                rebalance(new Ring<>(members, virtualNodes));
+            }
+        });
+    }
+
+    /**
+     * 移除节点, 它上面的 key 迁移到其他节点后才真正脱离
+     * @return 后台迁移完成的 Future
+     */
+    public Future<?> removeNode(final String id) {
+        return rebalancer.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<Member<K, V>> members = new ArrayList<>(ring.members);
+                boolean removed = false;
+                for (int i = 0; i < members.size(); i++) {
+                    if (members.get(i).id.equals(id)) {
+                        members.remove(i);
+                        removed = true;
+                        break;
+                    }
+                }
+                if (!removed) {
+                    throw new IllegalArgumentException("节点不存在: " + id);
+                }
+                if (members.isEmpty() && size.get() > 0) {
+                    throw new IllegalStateException("不能移除最后一个还有数据的节点: " + id);
+                }
+                rebalance(new Ring<>(members, virtualNodes));
+            }
+        });
+    }
+
+    /**
+     * 停止后台迁移线程
+     */
+    public void shutdown() {
+        rebalancer.shutdown();
+    }
+
+    private void rebalance(Ring<K, V> newRing) {
+        Ring<K, V> oldRing = ring;
+        lock.writeLock().lock();
+        try {
+            previousRing = oldRing;
+            ring = newRing;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            for (Member<K, V> member : oldRing.members) {
+                migrate(member, oldRing, newRing);
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                previousRing = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // 迁移 member 上所属节点发生变化的 key
+    private void migrate(final Member<K, V> member, final Ring<K, V> oldRing, final Ring<K, V> newRing) {
+        // 先取出 key 的快照, 不在遍历过程中修改节点
+        final List<K> keys = new ArrayList<>();
+        member.store.traversal(new Visitor<K, V>() {
+            @Override
+            boolean visit(K key, V value) {
+                if (!oldRing.owners(key, replicationFactor).equals(newRing.owners(key, replicationFactor))) {
+                    keys.add(key);
+                }
+                return false;
+            }
+        });
+
+        // 逐个 key 迁移, 只和同一个分段上的 put / remove 互斥, 不阻塞其他 key 的读写;
+        // 先复制到新节点再从旧节点删除, 迁移过程中 get 总能在新节点或旧环的主节点上找到
+        for (K key : keys) {
+            lock.readLock().lock();
+            try {
+                synchronized (stripe(key)) {
+                    migrateKey(member, newRing, key);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private void migrateKey(Member<K, V> member, Ring<K, V> newRing, K key) {
+        // 快照之后可能已经被删除
+        if (!member.store.containsKey(key)) return;
+
+        V value = member.store.get(key);
+        List<Member<K, V>> owners = newRing.owners(key, replicationFactor);
+        for (Member<K, V> owner : owners) {
+            // 新节点上已经有的值比迁移过来的更新
+            if (owner != member && !owner.store.containsKey(key)) {
+                owner.store.put(key, value);
+            }
+        }
+        if (!owners.contains(member)) {
+            member.store.remove(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Member<K, V> member : ring.members) {
+                member.store.clear();
+            }
+            Ring<K, V> previous = previousRing;
+            if (previous != null) {
+                for (Member<K, V> member : previous.members) {
+                    member.store.clear();
+                }
+            }
+            size.set(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        lock.readLock().lock();
+        try {
+            synchronized (stripe(key)) {
+                return putInternal(key, value);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private V putInternal(K key, V value) {
+        List<Member<K, V>> owners = ownersOrThrow(key);
+        boolean existed = owners.get(0).store.containsKey(key);
+        V oldValue = owners.get(0).store.put(key, value);
+        for (int i = 1; i < owners.size(); i++) {
+            owners.get(i).store.put(key, value);
+        }
+
+        // 迁移期间, 旧值可能还在旧环的主节点上
+        Ring<K, V> previous = previousRing;
+        if (!existed && previous != null) {
+            Member<K, V> oldPrimary = previous.primary(key);
+            if (oldPrimary != null && oldPrimary.store.containsKey(key)) {
+                existed = true;
+                oldValue = oldPrimary.store.get(key);
+            }
+        }
+        if (!existed) {
+            size.incrementAndGet();
+        }
+        return oldValue;
+    }
+
+    @Override
+    public V get(K key) {
+        return get(key, false);
+    }
+
+    /**
+     * @param allowReplica 为 true 时随机从主节点或副本节点读取, 分散主节点的读压力
+     */
+    public V get(K key, boolean allowReplica) {
+        lock.readLock().lock();
+        try {
+            Member<K, V> owner = allowReplica && replicationFactor > 1
+                    ? randomOwner(ring.owners(key, replicationFactor))
+                    : ring.primary(key);
+            if (owner == null) return null;
+            if (owner.store.containsKey(key)) {
+                return owner.store.get(key);
+            }
+
+            Ring<K, V> previous = previousRing;
+            if (previous == null) return null;
+            // 迁移中: 不加锁时, 两次查找之间这个 key 可能刚好从旧节点迁到新节点, 两边都查不到.
+            // 持有和 migrateKey 相同的分段锁重新查找, 迁移要么还没开始, 要么已经完成
+            synchronized (stripe(key)) {
+                if (owner.store.containsKey(key)) {
+                    return owner.store.get(key);
+                }
+                Member<K, V> oldPrimary = previous.primary(key);
+                return oldPrimary == null ? null : oldPrimary.store.get(key);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        lock.readLock().lock();
+        try {
+            synchronized (stripe(key)) {
+                return removeInternal(key);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private V removeInternal(K key) {
+        boolean existed = false;
+        V oldValue = null;
+        for (Member<K, V> owner : ring.owners(key, replicationFactor)) {
+            if (!existed && owner.store.containsKey(key)) {
+                existed = true;
+                oldValue = owner.store.get(key);
+            }
+            owner.store.remove(key);
+        }
+
+        // 迁移期间, 旧环上的节点也要删掉, 否则会被迁移回来
+        Ring<K, V> previous = previousRing;
+        if (previous != null) {
+            for (Member<K, V> owner : previous.owners(key, replicationFactor)) {
+                if (!existed && owner.store.containsKey(key)) {
+                    existed = true;
+                    oldValue = owner.store.get(key);
+                }
+                owner.store.remove(key);
+            }
+        }
+        if (existed) {
+            size.decrementAndGet();
+        }
+        return oldValue;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        lock.readLock().lock();
+        try {
+            Member<K, V> owner = ring.primary(key);
+            if (owner != null && owner.store.containsKey(key)) return true;
+
+            Ring<K, V> previous = previousRing;
+            if (previous == null) return false;
+            // 和 get 一样, 迁移中持有分段锁重新查找
+            synchronized (stripe(key)) {
+                if (owner != null && owner.store.containsKey(key)) return true;
+                Member<K, V> oldPrimary = previous.primary(key);
+                return oldPrimary != null && oldPrimary.store.containsKey(key);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsValue(final V value) {
+        final boolean[] found = new boolean[1];
+        traversal(new Visitor<K, V>() {
+            @Override
+            boolean visit(K key, V v) {
+                found[0] = value == null ? v == null : value.equals(v);
+                return found[0];
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * 每个 key 只在它的主节点上被访问一次, 副本不会重复访问
+     */
+    @Override
+    public void traversal(final Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        lock.readLock().lock();
+        try {
+            final Ring<K, V> current = ring;
+            final Ring<K, V> previous = previousRing;
+            for (final Member<K, V> member : allMembers(current, previous)) {
+                if (previous == null) {
+                    final boolean[] stopped = new boolean[1];
+                    member.store.traversal(new Visitor<K, V>() {
+                        @Override
+                        boolean visit(K key, V value) {
+                            if (current.primary(key) != member) return false;
+                            return stopped[0] = visitor.visit(key, value);
+                        }
+                    });
+                    if (stopped[0]) return;
+                    continue;
+                }
+
+                // 迁移期间需要查询其他节点, 先取出快照, 不能在持有节点锁时访问别的节点
+                final List<K> keys = new ArrayList<>();
+                final List<V> values = new ArrayList<>();
+                member.store.traversal(new Visitor<K, V>() {
+                    @Override
+                    boolean visit(K key, V value) {
+                        keys.add(key);
+                        values.add(value);
+                        return false;
+                    }
+                });
+                for (int i = 0; i < keys.size(); i++) {
+                    K key = keys.get(i);
+                    Member<K, V> primary = current.primary(key);
+                    // 还没迁移到新主节点的 key, 由旧环上的主节点负责访问
+                    boolean visit = primary == member
+                            || (previous.primary(key) == member && !primary.store.containsKey(key));
+                    if (visit && visitor.visit(key, values.get(i))) return;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 当前环和旧环上所有不重复的节点
+    private static <K, V> List<Member<K, V>> allMembers(Ring<K, V> current, Ring<K, V> previous) {
+        List<Member<K, V>> all = new ArrayList<>(current.members);
+        if (previous == null) return all;
+        for (Member<K, V> member : previous.members) {
+            if (!all.contains(member)) {
+                all.add(member);
+            }
+        }
+        return all;
+    }
+
+    private Object stripe(K key) {
+        return stripes[hash(key) & (stripes.length - 1)];
+    }
+
+    private List<Member<K, V>> ownersOrThrow(K key) {
+        List<Member<K, V>> owners = ring.owners(key, replicationFactor);
+        if (owners.isEmpty()) {
+            throw new IllegalStateException("还没有添加任何节点!");
+        }
+        return owners;
+    }
+
+    private Member<K, V> randomOwner(List<Member<K, V>> owners) {
+        if (owners.isEmpty()) return null;
+        return owners.get(ThreadLocalRandom.current().nextInt(owners.size()));
+    }
+
+    // 对 hashCode 再做一次扰动 (murmur3 fmix32), 让虚拟节点在环上分布均匀
+    private static int hash(Object o) {
+        int h = o == null ? 0 : o.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static class Member<K, V> {
+        final String id;
+        final TYMap<K, V> store;
+
+        Member(String id, TYMap<K, V> store) {
+            this.id = id;
+            this.store = store;
+        }
+    }
+
+    // 哈希环, 创建后不再修改, 成员变化时整体替换
+    private static class Ring<K, V> {
+        final List<Member<K, V>> members;
+        final TreeMap<Integer, Member<K, V>> points = new TreeMap<>();
+
+        Ring(List<Member<K, V>> members, int virtualNodes) {
+            this.members = members;
+            for (Member<K, V> member : members) {
+                for (int i = 0; i < virtualNodes; i++) {
+                    points.put(hash(member.id + "#" + i), member);
+                }
+            }
+        }
+
+        Member<K, V> primary(Object key) {
+            if (points.isEmpty()) return null;
+            Map.Entry<Integer, Member<K, V>> entry = points.ceilingEntry(hash(key));
+            return entry == null ? points.firstEntry().getValue() : entry.getValue();
+        }
+
+        // 顺时针找 count 个不同的节点, 第一个是主节点
+        List<Member<K, V>> owners(Object key, int count) {
+            List<Member<K, V>> owners = new ArrayList<>(count);
+            if (points.isEmpty()) return owners;
+            count = Math.min(count, members.size());
+
+            int h = hash(key);
+            for (Member<K, V> member : points.tailMap(h, true).values()) {
+                if (owners.size() == count) return owners;
+                if (!owners.contains(member)) owners.add(member);
+            }
+            for (Member<K, V> member : points.headMap(h, false).values()) {
+                if (owners.size() == count) return owners;
+                if (!owners.contains(member)) owners.add(member);
+            }
+            return owners;
+        }
+    }
+
+}
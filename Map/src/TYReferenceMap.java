@@ -0,0 +1,366 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * key / value 可以是弱引用或软引用的 TYMap
+ *
+ * 节点中保存的是引用对象, 被 GC 回收的 key / value 会进入 ReferenceQueue,
+ * 每次 put / remove / clear / size 时先处理队列, 把失效的节点从 map 中删除,
+ * 不需要定期遍历整个 map. 还没来得及删除的失效节点在 get / traversal 中会被跳过
+ *
+ * key 为 null 时总是强引用. 不是线程安全的
+ */
+public class TYReferenceMap<K, V> implements TYMap<K, V> {
+
+    public enum Strength {
+        STRONG, WEAK, SOFT
+    }
+
+    private final Strength keyStrength;
+    private final Strength valueStrength;
+
+    // 内部 map 的 key 是 KeyRef, value 是 V 或者 ValueRef
+    private final TYHashMap<Object, Object> map = new TYHashMap<>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    // 查询时复用的 key 包装, 不用每次查询都创建对象
+    private final LookupKey lookupKey = new LookupKey();
+
+    public TYReferenceMap(Strength keyStrength, Strength valueStrength) {
+        if (keyStrength == null || valueStrength == null) {
+            throw new IllegalArgumentException("keyStrength 和 valueStrength 不能为空!");
+        }
+        this.keyStrength = keyStrength;
+        this.valueStrength = valueStrength;
+    }
+
+    /**
+     * key 是弱引用, value 是强引用, 类似 java.util.WeakHashMap
+     */
+    public static <K, V> TYReferenceMap<K, V> weakKeys() {
+        return new TYReferenceMap<>(Strength.WEAK, Strength.STRONG);
+    }
+
+    /**
+     * key 是强引用, value 是软引用, 内存不足时 value 可以被回收
+     */
+    public static <K, V> TYReferenceMap<K, V> softValues() {
+        return new TYReferenceMap<>(Strength.STRONG, Strength.SOFT);
+    }
+
+    @Override
+    public int size() {
+        expungeStaleEntries();
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        // 队列中的引用对应的节点已经不在了, 直接丢弃
+        while (queue.poll() != null) {
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        expungeStaleEntries();
+        KeyRef keyRef = wrapKey(key);
+        return unwrapValue(map.put(keyRef, wrapValue(keyRef, value)));
+    }
+
+    @Override
+    public V get(K key) {
+        Object value = map.get(lookup(key));
+        lookupKey.key = null;
+        return unwrapValue(value);
+    }
+
+    @Override
+    public V remove(K key) {
+        expungeStaleEntries();
+        Object value = map.remove(lookup(key));
+        lookupKey.key = null;
+        return unwrapValue(value);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        Object probe = lookup(key);
+        boolean contains = map.containsKey(probe) && !isCleared(map.get(probe));
+        lookupKey.key = null;
+        return contains;
+    }
+
+    @Override
+    public boolean containsValue(final V value) {
+        final boolean[] found = new boolean[1];
+        traversal(new Visitor<K, V>() {
+            @Override
+            boolean visit(K key, V v) {
+                found[0] = value == null ? v == null : value.equals(v);
+                return found[0];
+            }
+        });
+        return found[0];
+    }
+
+    @Override
+    public void traversal(final Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        map.traversal(new Visitor<Object, Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            boolean visit(Object key, Object value) {
+                KeyRef keyRef = (KeyRef) key;
+                // 引用只读一次: 先判断是否回收再 get, 两次读取之间可能正好被回收
+                Object k = keyRef.get();
+                // 已经被回收, 但还没从 map 中删除. StrongKey 的 key 可以是 null
+                if (k == null && !(keyRef instanceof StrongKey)) return false;
+                Object v = value;
+                if (value instanceof ValueRef) {
+                    v = ((Reference<?>) value).get();
+                    if (v == null) return false;
+                }
+                return visitor.visit((K) k, (V) v);
+            }
+        });
+    }
+
+    // 删除 key 或 value 已经被回收的节点
+    private void expungeStaleEntries() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            if (ref instanceof KeyRef) {
+                // KeyRef 本身就是内部 map 的 key, 按引用相等可以直接找到
+                map.remove(ref);
+            } else {
+                ValueRef valueRef = (ValueRef) ref;
+                // 只有 value 没有被替换过时才删除
+                if (map.get(valueRef.keyRef()) == valueRef) {
+                    map.remove(valueRef.keyRef());
+                }
+            }
+        }
+    }
+
+    private KeyRef wrapKey(K key) {
+        if (key == null || keyStrength == Strength.STRONG) return new StrongKey(key);
+        if (keyStrength == Strength.WEAK) return new WeakKey(key, queue);
+        return new SoftKey(key, queue);
+    }
+
+    private Object wrapValue(KeyRef keyRef, V value) {
+        if (value == null || valueStrength == Strength.STRONG) return value;
+        if (valueStrength == Strength.WEAK) return new WeakValue(keyRef, value, queue);
+        return new SoftValue(keyRef, value, queue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V unwrapValue(Object value) {
+        if (value instanceof ValueRef) {
+            return (V) ((Reference<?>) value).get();
+        }
+        return (V) value;
+    }
+
+    private boolean isCleared(Object value) {
+        return value instanceof ValueRef && ((Reference<?>) value).get() == null;
+    }
+
+    // 用完之后要把 lookupKey.key 置空, 否则会一直引用最后查询的 key
+    private Object lookup(K key) {
+        lookupKey.key = key;
+        lookupKey.hash = key == null ? 0 : key.hashCode();
+        return lookupKey;
+    }
+
+    /**
+     * 内部 map 的 key: hashCode 在创建时记录下来, 被回收后也不会变,
+     * 这样失效的节点仍然能在红黑树中找到
+     */
+    private interface KeyRef {
+        Object get();
+
+        int hash();
+
+        boolean isCleared();
+    }
+
+    private interface ValueRef {
+        KeyRef keyRef();
+    }
+
+    private static boolean keyEquals(KeyRef self, Object o) {
+        if (self == o) return true;
+        if (!(o instanceof KeyRef)) return false;
+        KeyRef other = (KeyRef) o;
+        if (self.hash() != other.hash()) return false;
+        Object k1 = self.get();
+        Object k2 = other.get();
+        // 被回收的 key 只和自己相等
+        if (k1 == null || k2 == null) return k1 == null && k2 == null && !self.isCleared() && !other.isCleared();
+        return k1.equals(k2);
+    }
+
+    private static class StrongKey implements KeyRef {
+        private final Object key;
+        private final int hash;
+
+        StrongKey(Object key) {
+            this.key = key;
+            this.hash = key == null ? 0 : key.hashCode();
+        }
+
+        @Override
+        public Object get() {
+            return key;
+        }
+
+        @Override
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public boolean isCleared() {
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return keyEquals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // 查询用的 key, 只在一次查询中使用
+    private static class LookupKey implements KeyRef {
+        private Object key;
+        private int hash;
+
+        @Override
+        public Object get() {
+            return key;
+        }
+
+        @Override
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public boolean isCleared() {
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return keyEquals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class WeakKey extends WeakReference<Object> implements KeyRef {
+        private final int hash;
+
+        WeakKey(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = key.hashCode();
+        }
+
+        @Override
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public boolean isCleared() {
+            return get() == null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return keyEquals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class SoftKey extends SoftReference<Object> implements KeyRef {
+        private final int hash;
+
+        SoftKey(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = key.hashCode();
+        }
+
+        @Override
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public boolean isCleared() {
+            return get() == null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return keyEquals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // value 引用记录所属的 key, 被回收后用来删除节点
+    private static class WeakValue extends WeakReference<Object> implements ValueRef {
+        private final KeyRef keyRef;
+
+        WeakValue(KeyRef keyRef, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.keyRef = keyRef;
+        }
+
+        @Override
+        public KeyRef keyRef() {
+            return keyRef;
+        }
+    }
+
+    private static class SoftValue extends SoftReference<Object> implements ValueRef {
+        private final KeyRef keyRef;
+
+        SoftValue(KeyRef keyRef, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.keyRef = keyRef;
+        }
+
+        @Override
+        public KeyRef keyRef() {
+            return keyRef;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * TYPartitionServer 的客户端, 把远端分区当成一个普通的 TYMap 使用
+ * 一个连接同一时间只处理一个请求, 所有方法都是同步的, 网络异常包装成 UncheckedIOException 抛出
+ */
+public class TYRemoteMap<K, V> implements TYMap<K, V>, Closeable {
+
+    private final TYMapCodec<K, V> codec;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public TYRemoteMap(int port, TYMapCodec<K, V> codec) throws IOException {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port, codec);
+    }
+
+    public TYRemoteMap(String host, int port, TYMapCodec<K, V> codec) throws IOException {
+        this.codec = codec;
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    public synchronized int size() {
+        try {
+            send(TYPartitionServer.SIZE);
+            return in.readInt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            send(TYPartitionServer.CLEAR);
+            in.readBoolean();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        try {
+            out.writeByte(TYPartitionServer.PUT);
+            codec.writeKey(key, out);
+            codec.writeValue(value, out);
+            out.flush();
+            return codec.readValue(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        try {
+            sendKey(TYPartitionServer.GET, key);
+            return codec.readValue(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        try {
+            sendKey(TYPartitionServer.REMOVE, key);
+            return codec.readValue(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean containsKey(K key) {
+        try {
+            sendKey(TYPartitionServer.CONTAINS_KEY, key);
+            return in.readBoolean();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean containsValue(V value) {
+        try {
+            out.writeByte(TYPartitionServer.CONTAINS_VALUE);
+            codec.writeValue(value, out);
+            out.flush();
+            return in.readBoolean();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 远端边遍历边写出, 这里边读边回调, 不会缓存整个分区
+     */
+    @Override
+    public synchronized void traversal(Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        try {
+            send(TYPartitionServer.TRAVERSAL);
+            codec.readEntries(in, visitor);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void send(byte op) throws IOException {
+        out.writeByte(op);
+        out.flush();
+    }
+
+    private void sendKey(byte op, K key) throws IOException {
+        out.writeByte(op);
+        codec.writeKey(key, out);
+        out.flush();
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * 线程安全的 TYMap 包装, 所有操作都在同一把锁 (mutex) 上同步
+ * traversal 期间也持有锁, 不要在 Visitor 中做耗时操作
+ * 锁就是包装对象本身, 多个操作需要作为整体执行时, 可以 synchronized (map) { ... }
+ */
+public class TYSynchronizedMap<K, V> implements TYMap<K, V> {
+
+    private final TYMap<K, V> map;
+    private final Object mutex;
+
+    public TYSynchronizedMap(TYMap<K, V> map) {
+        if (map == null) {
+            throw new IllegalArgumentException("map 不能为空!");
+        }
+        this.map = map;
+        this.mutex = this;
+    }
+
+    // 被包装的 map, 只能在持有锁时访问
+    TYMap<K, V> unwrap() {
+        return map;
+    }
+
+    @Override
+    public int size() {
+        synchronized (mutex) {
+            return map.size();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        synchronized (mutex) {
+            return map.isEmpty();
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mutex) {
+            map.clear();
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        synchronized (mutex) {
+            return map.put(key, value);
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        synchronized (mutex) {
+            return map.get(key);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        synchronized (mutex) {
+            return map.remove(key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        synchronized (mutex) {
+            return map.containsKey(key);
+        }
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        synchronized (mutex) {
+            return map.containsValue(value);
+        }
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        synchronized (mutex) {
+            map.traversal(visitor);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 两级缓存: 内存中的热数据 + 本地文件中的冷数据
+ *
+ * 热数据放在按访问顺序排列的 TYLinkedHashMap 中, 数量超过 hotCapacity 时,
+ * 最久没有访问的元素被降级写入 TYDiskMap; 访问到冷数据时再提升回内存
+ * 一个 key 同一时间只存在于其中一级
+ *
+ * 不是线程安全的
+ */
+public class TYTieredMap<K, V> implements TYMap<K, V>, Closeable {
+
+    private final int hotCapacity;
+    private final TYDiskMap<K, V> cold;
+    private final TYLinkedHashMap<K, V> hot;
+
+    /**
+     * @param hotCapacity 内存中最多保留的元素数量
+     * @param file 冷数据文件, 已经存在时会加载其中的数据
+     * @param codec key / value 的序列化方式
+     */
+    public TYTieredMap(int hotCapacity, File file, TYMapCodec<K, V> codec) throws IOException {
+        if (hotCapacity <= 0) {
+            throw new IllegalArgumentException("hotCapacity 必须大于 0!");
+        }
+        this.hotCapacity = hotCapacity;
+        this.cold = new TYDiskMap<>(file, codec);
+        this.hot = new TYLinkedHashMap<K, V>(hotCapacity + 1, true) {
+            @Override
+            protected boolean removeEldestEntry(K key, V value) {
+                if (size() <= TYTieredMap.this.hotCapacity) return false;
+                // 降级到磁盘
+                cold.put(key, value);
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        cold.close();
+    }
+
+    /**
+     * 当前在内存中的元素数量
+     */
+    public int hotSize() {
+        return hot.size();
+    }
+
+    @Override
+    public int size() {
+        return hot.size() + cold.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return hot.isEmpty() && cold.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        hot.clear();
+        cold.clear();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        // 先从磁盘中删掉, 保证只存在于一级
+        V oldValue = cold.containsKey(key) ? cold.remove(key) : null;
+        V hotValue = hot.put(key, value);
+        return hotValue != null ? hotValue : oldValue;
+    }
+
+    @Override
+    public V get(K key) {
+        V value = hot.get(key);
+        if (value != null || !cold.containsKey(key)) return value;
+
+        // 冷数据, 提升回内存 (可能会把最老的热数据挤到磁盘上)
+        value = cold.remove(key);
+        hot.put(key, value);
+        return value;
+    }
+
+    @Override
+    public V remove(K key) {
+        if (cold.containsKey(key)) {
+            return cold.remove(key);
+        }
+        return hot.remove(key);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return hot.containsKey(key) || cold.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return hot.containsValue(value) || cold.containsValue(value);
+    }
+
+    /**
+     * 先遍历内存中的元素 (从最久没有访问的开始), 再遍历磁盘上的元素
+     * 遍历不会改变元素所在的层级
+     */
+    @Override
+    public void traversal(final Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        final boolean[] stopped = new boolean[1];
+        hot.traversal(new Visitor<K, V>() {
+            @Override
+            boolean visit(K key, V value) {
+                return stopped[0] = visitor.visit(key, value);
+            }
+        });
+        if (stopped[0]) return;
+        cold.traversal(visitor);
+    }
+
+}